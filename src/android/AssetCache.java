@@ -0,0 +1,146 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+
+/**
+ * Process wide cache of the toolbar icons and fonts loaded from the app assets.
+ *
+ * Each asset is decoded once per display density. Drawables are shared through
+ * their ConstantState, so every window gets its own Drawable backed by the same
+ * bitmap. Safe to call from any thread.
+ */
+final class AssetCache {
+
+    private static final String LOG_TAG = "AssetCache";
+
+    private static final HashMap<String, Drawable.ConstantState> drawables = new HashMap<String, Drawable.ConstantState>();
+    private static final HashMap<String, Typeface> typefaces = new HashMap<String, Typeface>();
+
+    private AssetCache() {
+    }
+
+    /**
+     * Get a drawable from the app assets.
+     *
+     * @param context           Context used to open the asset.
+     * @param assetPath         Path of the image, relative to the assets folder.
+     * @param fallbackResName   Name of the drawable resource to use when the asset can not be read.
+     * @return                  A new Drawable sharing the cached state, or null if neither could be loaded.
+     */
+    static Drawable getDrawable(Context context, String assetPath, String fallbackResName) {
+        Resources res = context.getResources();
+        String key = assetPath + "@" + res.getDisplayMetrics().densityDpi;
+        Drawable.ConstantState state;
+        synchronized (drawables) {
+            state = drawables.get(key);
+        }
+        if (state == null) {
+            Drawable drawable = decodeDrawable(context, assetPath);
+            if (drawable == null) {
+                int resId = res.getIdentifier(fallbackResName, "drawable", context.getPackageName());
+                drawable = resId != 0 ? res.getDrawable(resId) : null;
+            }
+            if (drawable == null) {
+                return null;
+            }
+            state = drawable.getConstantState();
+            if (state == null) {
+                return drawable;
+            }
+            synchronized (drawables) {
+                // Another thread may have decoded the same asset meanwhile
+                Drawable.ConstantState cached = drawables.get(key);
+                if (cached != null) {
+                    state = cached;
+                } else {
+                    drawables.put(key, state);
+                }
+            }
+        }
+        return state.newDrawable(res);
+    }
+
+    /**
+     * Get a typeface from the app assets.
+     *
+     * @param context       Context used to open the asset.
+     * @param assetPath     Path of the font, relative to the assets folder.
+     * @return              The cached typeface, or null if the font could not be loaded.
+     */
+    static Typeface getTypeface(Context context, String assetPath) {
+        synchronized (typefaces) {
+            if (typefaces.containsKey(assetPath)) {
+                return typefaces.get(assetPath);
+            }
+        }
+        Typeface typeface = null;
+        try {
+            typeface = Typeface.createFromAsset(context.getApplicationContext().getAssets(), assetPath);
+        } catch (RuntimeException e) {
+            Log.d(LOG_TAG, "Could not load font " + assetPath + ": " + e.toString());
+        }
+        synchronized (typefaces) {
+            // A missing font is remembered too, so it is not looked up on every open
+            if (!typefaces.containsKey(assetPath)) {
+                typefaces.put(assetPath, typeface);
+            }
+            return typefaces.get(assetPath);
+        }
+    }
+
+    /**
+     * Forget every decoded asset. Windows that are already built keep their drawables.
+     */
+    static void clear() {
+        synchronized (drawables) {
+            drawables.clear();
+        }
+        synchronized (typefaces) {
+            typefaces.clear();
+        }
+    }
+
+    private static Drawable decodeDrawable(Context context, String assetPath) {
+        InputStream ims = null;
+        try {
+            ims = context.getAssets().open(assetPath);
+            return Drawable.createFromStream(ims, null);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (ims != null) {
+                try {
+                    ims.close();
+                } catch (IOException e) {
+                    // Nothing left to do with the stream
+                }
+            }
+        }
+    }
+}
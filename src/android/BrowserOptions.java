@@ -0,0 +1,220 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The options a browser is opened with, parsed from the features string of
+ * open(), e.g. "zoom=no,hidden=yes".
+ *
+ * Options are immutable, and the same few features strings are used over and
+ * over, so parsed options are kept by features string. A feature without a
+ * value is on, and boolean features are on unless set to "no". Other features
+ * are read with getInt(), getString() and getEnum().
+ */
+final class BrowserOptions {
+
+    private static final String LOG_TAG = "BrowserOptions";
+
+    static final String ZOOM = "zoom";
+    static final String HIDDEN = "hidden";
+    static final String CLEAR_ALL_CACHE = "clearcache";
+    static final String CLEAR_SESSION_CACHE = "clearsessioncache";
+    static final String HARDWARE_BACK_BUTTON = "hardwareback";
+    static final String REDIRECT_INTERFACE = "meliuzredirectinterface";
+    static final String REDIRECT_PREFETCH = "meliuzredirectprefetch";
+    static final String BATCH_EVENTS = "batchevents";
+    static final String COLLAPSE_REDIRECTS = "collapseredirects";
+    static final String RESOURCE_CACHE = "resourcecache";
+    static final String CONTENT_BLOCKER = "contentblocker";
+    static final String DATA_SAVER = "datasaver";
+    static final String PAUSE_HOST = "pausehost";
+    static final String LOAD_ATTEMPTS = "loadattempts";
+    static final String RETRY_DELAY = "retrydelay";
+
+    static final BrowserOptions DEFAULTS = new BrowserOptions(Collections.<String, String>emptyMap());
+
+    private static final int MAX_CACHED = 16;
+    private static final LinkedHashMap<String, BrowserOptions> cache = new LinkedHashMap<String, BrowserOptions>(MAX_CACHED, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BrowserOptions> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    final boolean showZoomControls;
+    final boolean hidden;
+    final boolean clearAllCache;
+    final boolean clearSessionCache;
+    final boolean hardwareBackButton;
+    final boolean meliuzRedirectInterface;
+    // Only with meliuzredirectinterface
+    final boolean meliuzRedirectPrefetch;
+    final boolean batchEvents;
+    final boolean collapseRedirects;
+    final boolean useResourceCache;
+    final boolean blockContent;
+    final DataSaverPolicy.Mode dataSaver;
+    final boolean pauseHost;
+    final int loadAttempts;
+    final int retryDelay;
+
+    private final Map<String, String> values;
+
+    private BrowserOptions(Map<String, String> values) {
+        this.values = values;
+        showZoomControls = getBoolean(ZOOM, true);
+        hidden = getBoolean(HIDDEN, false);
+        clearAllCache = getBoolean(CLEAR_ALL_CACHE, false);
+        // clearcache takes precedence
+        clearSessionCache = !values.containsKey(CLEAR_ALL_CACHE) && getBoolean(CLEAR_SESSION_CACHE, false);
+        hardwareBackButton = getBoolean(HARDWARE_BACK_BUTTON, true);
+        meliuzRedirectInterface = getBoolean(REDIRECT_INTERFACE, false);
+        meliuzRedirectPrefetch = meliuzRedirectInterface && getBoolean(REDIRECT_PREFETCH, false);
+        batchEvents = getBoolean(BATCH_EVENTS, false);
+        collapseRedirects = getBoolean(COLLAPSE_REDIRECTS, false);
+        useResourceCache = getBoolean(RESOURCE_CACHE, false);
+        blockContent = getBoolean(CONTENT_BLOCKER, false);
+        // "datasaver" alone is "datasaver=yes"
+        dataSaver = "".equals(values.get(DATA_SAVER)) ? DataSaverPolicy.Mode.YES : getEnum(DATA_SAVER, DataSaverPolicy.Mode.class, DataSaverPolicy.Mode.NO);
+        pauseHost = getBoolean(PAUSE_HOST, false);
+        loadAttempts = getInt(LOAD_ATTEMPTS, 4);
+        retryDelay = getInt(RETRY_DELAY, 1000);
+    }
+
+    /**
+     * Get the options for a features string, parsing it the first time.
+     *
+     * @param features      The features string, e.g. "zoom=no,hidden=yes". Null, empty
+     *                      or "null" for the defaults.
+     * @return              The options.
+     */
+    static BrowserOptions parse(String features) {
+        if (features == null || features.length() == 0 || features.equals("null")) {
+            return DEFAULTS;
+        }
+        synchronized (cache) {
+            BrowserOptions options = cache.get(features);
+            if (options == null) {
+                options = new BrowserOptions(parseValues(features));
+                cache.put(features, options);
+            }
+            return options;
+        }
+    }
+
+    /**
+     * Split "key=value,key2=value2" in a single pass. Keys are lower cased,
+     * spaces around keys and values are ignored, and a key without "=" gets an
+     * empty value.
+     */
+    private static Map<String, String> parseValues(String features) {
+        HashMap<String, String> values = new HashMap<String, String>();
+        int length = features.length();
+        int start = 0;
+        while (start < length) {
+            int end = features.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int equals = features.indexOf('=', start);
+            String key;
+            String value;
+            if (equals >= 0 && equals < end) {
+                key = features.substring(start, equals).trim().toLowerCase(Locale.ENGLISH);
+                value = features.substring(equals + 1, end).trim();
+            } else {
+                key = features.substring(start, end).trim().toLowerCase(Locale.ENGLISH);
+                value = "";
+            }
+            if (key.length() > 0) {
+                values.put(key, value);
+            }
+            start = end + 1;
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * @param name          The feature name.
+     * @param defaultValue  The value when the feature is not set.
+     * @return              False if the feature is set to "no", in any case, true if set to anything else.
+     */
+    boolean getBoolean(String name, boolean defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        return !value.equalsIgnoreCase("no");
+    }
+
+    /**
+     * @param name          The feature name.
+     * @param defaultValue  The value when the feature is not set or not a number.
+     * @return              The feature value.
+     */
+    int getInt(String name, int defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Log.d(LOG_TAG, "Invalid value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param name          The feature name.
+     * @param defaultValue  The value when the feature is not set.
+     * @return              The feature value.
+     */
+    String getString(String name, String defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @param name          The feature name.
+     * @param type          The enum class, its constants are matched ignoring case.
+     * @param defaultValue  The value when the feature is not set or not a constant of type.
+     * @return              The feature value.
+     */
+    <E extends Enum<E>> E getEnum(String name, Class<E> type, E defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            Log.d(LOG_TAG, "Invalid value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.os.SystemClock;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/**
+ * The state of one browser opened from JavaScript: its window, the callback
+ * its events go to, its user scripts and the options it was opened with.
+ *
+ * Sessions are keyed by the id the JavaScript InAppBrowser object was created
+ * with, so that several browsers can be open at once. They are touched from
+ * both the plugin thread and the UI thread: the window is only set and used on
+ * the UI thread, everything else is safe from any thread.
+ */
+class BrowserSession {
+
+    final String id;
+    final BrowserOptions options;
+    final UserScriptRegistry userScripts = new UserScriptRegistry();
+    final long openedAt = SystemClock.elapsedRealtime();
+
+    // Set once the window is attached, on the UI thread
+    volatile InAppBrowserWindow window;
+    volatile EventBatcher eventBatcher;
+    // The navigation in progress, or the last one. Read from the WebView network threads
+    volatile NavigationTimeline navigation;
+    // Set by setDataSaver(), replaces the mode of the options and of the domains
+    volatile DataSaverPolicy.Mode dataSaverOverride;
+    // Whether the window is saving data now. Read from the WebView network threads
+    volatile boolean savingData;
+    // Whether saving data depends on the connection. Set on the UI thread
+    boolean dataSaverAuto;
+
+    private long windowReadyAt;
+    private String windowSource;
+
+    private CallbackContext callbackContext;
+    private volatile boolean closed;
+    // Results kept while the Cordova WebView is suspended, null when they go out at once
+    private ArrayList<PluginResult> heldResults;
+
+    /**
+     * @param id                The id of the JavaScript InAppBrowser object.
+     * @param options           The options it was opened with.
+     * @param callbackContext   Where the events go.
+     */
+    BrowserSession(String id, BrowserOptions options, CallbackContext callbackContext) {
+        this.id = id;
+        this.options = options;
+        this.callbackContext = callbackContext;
+    }
+
+    /**
+     * Mark the session as closed. The window, if attached, is left to the caller.
+     *
+     * @return              False if it was already closed.
+     */
+    synchronized boolean close() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    /**
+     * @return whether the session has been closed, its window must then not be shown
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Record that the window is attached. Must be called on the UI thread.
+     *
+     * @param source        Where its WebView came from, see NavigationTimeline.
+     */
+    void windowReady(String source) {
+        windowReadyAt = SystemClock.elapsedRealtime();
+        windowSource = source;
+    }
+
+    /**
+     * Start the timeline of a new navigation. The first one is measured from
+     * the open() call. Must be called on the UI thread.
+     *
+     * @param url           The page that started loading.
+     * @return              The timeline, now the current navigation.
+     */
+    NavigationTimeline startNavigation(String url) {
+        NavigationTimeline timeline;
+        if (navigation == null) {
+            timeline = new NavigationTimeline(openedAt, true, url);
+            timeline.windowReady(windowReadyAt, windowSource);
+        } else {
+            timeline = new NavigationTimeline(SystemClock.elapsedRealtime(), false, url);
+        }
+        navigation = timeline;
+        return timeline;
+    }
+
+    /**
+     * Send an event to JavaScript.
+     *
+     * @param obj           The event.
+     * @param keepCallback  False for the last event of the session.
+     * @param status        The status to send it with.
+     */
+    void sendUpdate(JSONObject obj, boolean keepCallback, PluginResult.Status status) {
+        EventBatcher batcher = this.eventBatcher;
+        if (batcher != null) {
+            if (keepCallback) {
+                batcher.add(obj);
+                return;
+            }
+            // The last event of a window closes the callback, everything queued goes first
+            batcher.flush();
+        }
+        sendPluginResult(new PluginResult(status, obj), keepCallback);
+    }
+
+    /**
+     * Keep the results for JavaScript until releaseResults(), e.g. while the
+     * Cordova WebView is suspended. The last result of the session releases
+     * them too.
+     */
+    synchronized void holdResults() {
+        if (heldResults == null) {
+            heldResults = new ArrayList<PluginResult>();
+        }
+    }
+
+    /**
+     * Send the results kept since holdResults(), in order, and stop keeping them.
+     */
+    synchronized void releaseResults() {
+        ArrayList<PluginResult> results = heldResults;
+        heldResults = null;
+        if (results == null || callbackContext == null) {
+            return;
+        }
+        for (PluginResult result : results) {
+            callbackContext.sendPluginResult(result);
+        }
+    }
+
+    /**
+     * Send a result to the open callback, unless it has already been closed.
+     *
+     * @param result        The result.
+     * @param keepCallback  False to close the callback.
+     */
+    synchronized void sendPluginResult(PluginResult result, boolean keepCallback) {
+        if (callbackContext == null) {
+            return;
+        }
+        result.setKeepCallback(keepCallback);
+        if (heldResults != null) {
+            if (keepCallback) {
+                heldResults.add(result);
+                return;
+            }
+            releaseResults();
+        }
+        callbackContext.sendPluginResult(result);
+        if (!keepCallback) {
+            callbackContext = null;
+        }
+    }
+}
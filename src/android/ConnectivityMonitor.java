@@ -0,0 +1,167 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+/**
+ * Tells whether the device is connected, and whether it is on a connection
+ * where data is expensive: a metered network, a 2G link, or any network with
+ * the system Data Saver on.
+ *
+ * The state is read again on every connectivity broadcast, and the listener
+ * is called on the UI thread when it changes. Requires the
+ * ACCESS_NETWORK_STATE permission.
+ */
+class ConnectivityMonitor {
+
+    private static final String LOG_TAG = "ConnectivityMonitor";
+
+    /**
+     * Told when the device connects or disconnects, and when the connection
+     * becomes constrained or stops being so.
+     */
+    interface Listener {
+        void onConnectedChanged(boolean connected);
+
+        void onConstrainedChanged(boolean constrained);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private volatile boolean connected;
+    private volatile boolean constrained;
+    private BroadcastReceiver receiver;
+
+    /**
+     * @param context       The context to register the receiver with.
+     * @param listener      Told about changes, on the UI thread.
+     */
+    ConnectivityMonitor(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    /**
+     * Start following connectivity changes. Must be called on the UI thread.
+     */
+    void start() {
+        if (receiver != null) {
+            return;
+        }
+        connected = readConnected();
+        constrained = readConstrained();
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                boolean nowConnected = readConnected();
+                if (nowConnected != connected) {
+                    connected = nowConnected;
+                    Log.d(LOG_TAG, nowConnected ? "Connected" : "Disconnected");
+                    listener.onConnectedChanged(nowConnected);
+                }
+                boolean now = readConstrained();
+                if (now != constrained) {
+                    constrained = now;
+                    Log.d(LOG_TAG, now ? "Connection is constrained" : "Connection is no longer constrained");
+                    listener.onConstrainedChanged(now);
+                }
+            }
+        };
+        IntentFilter filter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            filter.addAction(ConnectivityManager.ACTION_RESTRICT_BACKGROUND_CHANGED);
+        }
+        context.registerReceiver(receiver, filter);
+    }
+
+    /**
+     * Stop following connectivity changes.
+     */
+    void stop() {
+        if (receiver != null) {
+            context.unregisterReceiver(receiver);
+            receiver = null;
+        }
+    }
+
+    /**
+     * @return whether the device is connected, false until start() is called. Safe from any thread.
+     */
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return whether data is expensive on the current connection. Safe from any thread.
+     */
+    boolean isConstrained() {
+        return constrained;
+    }
+
+    private boolean readConnected() {
+        ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = manager.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private boolean readConstrained() {
+        ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = manager.getActiveNetworkInfo();
+        if (info == null || !info.isConnected()) {
+            // Nothing loads anyway
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                && manager.getRestrictBackgroundStatus() == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED) {
+            return true;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (manager.isActiveNetworkMetered()) {
+                return true;
+            }
+        } else if (info.getType() == ConnectivityManager.TYPE_MOBILE) {
+            return true;
+        }
+        return info.getType() == ConnectivityManager.TYPE_MOBILE && isSlow(info.getSubtype());
+    }
+
+    private static boolean isSlow(int networkType) {
+        switch (networkType) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Decides which page resources not to load, from a list of rules in the
+ * Adblock Plus filter syntax, e.g. EasyList or EasyPrivacy.
+ *
+ * Only rules for URLs are used: "||host^" rules go to a host trie, other
+ * patterns to a URL pattern automaton, "@@" marks exceptions, and the only
+ * options understood are "third-party" and "~third-party"; rules with other
+ * options and element hiding rules are skipped. Hosts of the whitelist, with
+ * their subdomains, are never blocked, and neither is anything on their pages,
+ * so that affiliate redirects and their attribution work as they do without
+ * blocking.
+ *
+ * Built once on a background thread, then shouldBlock() is safe from any thread
+ * and does not allocate.
+ */
+class ContentBlocker {
+
+    // Host trie flags
+    private static final int HOST_ALLOW = 1;
+    private static final int HOST_BLOCK = 2;
+    private static final int HOST_BLOCK_THIRD_PARTY = 4;
+    private static final int HOST_BLOCK_FIRST_PARTY = 8;
+
+    // Pattern flags
+    private static final int ALLOW = 1;
+    private static final int BLOCK = 2;
+    private static final int THIRD_PARTY = 4;
+    private static final int FIRST_PARTY = 8;
+
+    private final HostSuffixTrie hosts = new HostSuffixTrie();
+    private final UrlPatternMatcher patterns = new UrlPatternMatcher();
+    private final HostSuffixTrie whitelist = new HostSuffixTrie();
+    private int hostRules;
+    private int patternRules;
+    private boolean hasExceptionPatterns;
+
+    private ContentBlocker() {
+    }
+
+    /**
+     * @param rules         The rules, one per line.
+     * @param whitelist     Hosts that are never blocked, with their subdomains.
+     * @return              The blocker.
+     */
+    static ContentBlocker load(BufferedReader rules, String[] whitelist) throws IOException {
+        ContentBlocker blocker = new ContentBlocker();
+        String line;
+        while ((line = rules.readLine()) != null) {
+            blocker.addRule(line.trim());
+        }
+        for (String host : whitelist) {
+            host = host.trim().toLowerCase(Locale.ENGLISH);
+            if (host.length() > 0) {
+                blocker.whitelist.add(host, HOST_ALLOW);
+            }
+        }
+        blocker.patterns.compile();
+        return blocker;
+    }
+
+    /**
+     * @return the number of rules in use, for logging
+     */
+    int getRuleCount() {
+        return hostRules + patternRules;
+    }
+
+    /**
+     * @param url           The resource URL.
+     * @param pageHost      The host of the page loading it, or null if unknown.
+     * @return              Whether the resource must not be loaded.
+     */
+    boolean shouldBlock(String url, String pageHost) {
+        int hostStart = url.indexOf("://");
+        if (hostStart < 0) {
+            return false;
+        }
+        hostStart += 3;
+        int hostEnd = hostStart;
+        while (hostEnd < url.length()) {
+            char c = url.charAt(hostEnd);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            if (c == '@') {
+                hostStart = hostEnd + 1;
+            }
+            hostEnd++;
+        }
+        int port = url.lastIndexOf(':', hostEnd - 1);
+        if (port >= hostStart) {
+            hostEnd = port;
+        }
+        if (hostEnd == hostStart) {
+            return false;
+        }
+
+        if (whitelist.match(url, hostStart, hostEnd) != 0) {
+            return false;
+        }
+        if (pageHost != null && whitelist.match(pageHost, 0, pageHost.length()) != 0) {
+            return false;
+        }
+        boolean thirdParty = pageHost != null && !isSameSite(url, hostStart, hostEnd, pageHost);
+
+        int hostFlags = hosts.match(url, hostStart, hostEnd);
+        if ((hostFlags & HOST_ALLOW) != 0) {
+            return false;
+        }
+        boolean hostBlocked = (hostFlags & HOST_BLOCK) != 0
+                || (hostFlags & (thirdParty ? HOST_BLOCK_THIRD_PARTY : HOST_BLOCK_FIRST_PARTY)) != 0;
+        if (hostBlocked && !hasExceptionPatterns) {
+            return true;
+        }
+        int flags = patterns.match(url, hostStart, hostEnd, thirdParty ? FIRST_PARTY : THIRD_PARTY);
+        if ((flags & ALLOW) != 0) {
+            return false;
+        }
+        return hostBlocked || (flags & BLOCK) != 0;
+    }
+
+    private void addRule(String rule) {
+        if (rule.length() == 0 || rule.startsWith("!") || rule.startsWith("[")
+                || rule.contains("##") || rule.contains("#@#") || rule.contains("#?#") || rule.contains("#$#")) {
+            return;
+        }
+        boolean exception = rule.startsWith("@@");
+        if (exception) {
+            rule = rule.substring(2);
+        }
+        // Regular expressions
+        if (rule.length() > 1 && rule.startsWith("/") && rule.endsWith("/")) {
+            return;
+        }
+        int party = 0;
+        int dollar = rule.lastIndexOf('$');
+        if (dollar >= 0) {
+            for (String option : rule.substring(dollar + 1).split(",")) {
+                option = option.trim().toLowerCase(Locale.ENGLISH);
+                if (option.equals("third-party")) {
+                    party = THIRD_PARTY;
+                } else if (option.equals("~third-party")) {
+                    party = FIRST_PARTY;
+                } else {
+                    return;
+                }
+            }
+            rule = rule.substring(0, dollar);
+        }
+        // Would block everything
+        if (rule.length() == 0 || rule.equals("*") || rule.equals("|") || rule.equals("||")) {
+            return;
+        }
+
+        String host = hostOf(rule);
+        if (host != null) {
+            int hostFlags;
+            if (exception) {
+                hostFlags = HOST_ALLOW;
+            } else if (party == THIRD_PARTY) {
+                hostFlags = HOST_BLOCK_THIRD_PARTY;
+            } else if (party == FIRST_PARTY) {
+                hostFlags = HOST_BLOCK_FIRST_PARTY;
+            } else {
+                hostFlags = HOST_BLOCK;
+            }
+            // A host exception does not depend on the party, so only keep unconditional ones here
+            if (!exception || party == 0) {
+                hosts.add(host, hostFlags);
+                hostRules++;
+                return;
+            }
+        }
+        patterns.add(rule, (exception ? ALLOW : BLOCK) | party);
+        patternRules++;
+        hasExceptionPatterns |= exception;
+    }
+
+    /**
+     * @return the host of a "||host^" rule, lower case, or null for any other rule
+     */
+    private static String hostOf(String rule) {
+        if (!rule.startsWith("||")) {
+            return null;
+        }
+        int end = rule.length();
+        if (rule.endsWith("^")) {
+            end--;
+        }
+        if (end <= 2) {
+            return null;
+        }
+        for (int i = 2; i < end; i++) {
+            char c = rule.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_')) {
+                return null;
+            }
+        }
+        return rule.substring(2, end).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @param host          A host.
+     * @param pageHost      The host of the page.
+     * @return              Whether the host belongs to the same site as the page, see below.
+     */
+    static boolean isSameSite(String host, String pageHost) {
+        return isSameSite(host, 0, host.length(), pageHost);
+    }
+
+    /**
+     * Whether two hosts belong to the same site, comparing their registrable
+     * domains. Without the public suffix list, a two letter top level domain
+     * with a second level of up to three letters, e.g. "com.br", counts as a
+     * suffix.
+     */
+    private static boolean isSameSite(String url, int hostStart, int hostEnd, String pageHost) {
+        int siteStart = siteStart(url, hostStart, hostEnd);
+        int pageSiteStart = siteStart(pageHost, 0, pageHost.length());
+        int length = hostEnd - siteStart;
+        return length == pageHost.length() - pageSiteStart
+                && url.regionMatches(true, siteStart, pageHost, pageSiteStart, length);
+    }
+
+    private static int siteStart(String host, int start, int end) {
+        int lastDot = host.lastIndexOf('.', end - 1);
+        if (lastDot < start) {
+            return start;
+        }
+        int secondDot = host.lastIndexOf('.', lastDot - 1);
+        if (secondDot < start) {
+            return start;
+        }
+        if (end - lastDot - 1 == 2 && lastDot - secondDot - 1 <= 3) {
+            int thirdDot = host.lastIndexOf('.', secondDot - 1);
+            return thirdDot < start ? start : thirdDot + 1;
+        }
+        return secondDot + 1;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * When to save data, by domain: images are then not loaded automatically,
+ * and web fonts and media files are not loaded at all.
+ *
+ * The domains come from a preference such as "meliuz.com.br=no,store.com=yes";
+ * a domain applies to its subdomains too, and pages of other domains use the
+ * mode they were opened with.
+ */
+class DataSaverPolicy {
+
+    private static final String LOG_TAG = "DataSaverPolicy";
+
+    /**
+     * NO and YES are always off and always on, AUTO is on while the
+     * connection is constrained.
+     */
+    enum Mode { NO, YES, AUTO }
+
+    // Fonts and media, which pages work without
+    private static final String[] DEFERRED_EXTENSIONS = {
+        ".woff", ".woff2", ".ttf", ".otf", ".eot",
+        ".mp4", ".webm", ".m3u8", ".mp3", ".ogg", ".ogv", ".m4a"
+    };
+
+    private final HashMap<String, Mode> domains = new HashMap<String, Mode>();
+
+    /**
+     * @param domains       Comma separated "domain=mode" pairs, or null.
+     */
+    DataSaverPolicy(String domains) {
+        if (domains == null) {
+            return;
+        }
+        for (String entry : domains.split(",")) {
+            int equals = entry.indexOf('=');
+            if (equals < 0) {
+                continue;
+            }
+            String domain = entry.substring(0, equals).trim().toLowerCase(Locale.ENGLISH);
+            String mode = entry.substring(equals + 1).trim().toUpperCase(Locale.ENGLISH);
+            try {
+                this.domains.put(domain, Mode.valueOf(mode));
+            } catch (IllegalArgumentException e) {
+                Log.d(LOG_TAG, "Invalid data saver mode for " + domain + ": " + mode);
+            }
+        }
+    }
+
+    /**
+     * @param host          The host of the page, or null.
+     * @param defaultMode   The mode for hosts without one of their own.
+     * @return              The mode of the host or of its closest parent domain.
+     */
+    Mode modeFor(String host, Mode defaultMode) {
+        if (host == null || domains.isEmpty()) {
+            return defaultMode;
+        }
+        String domain = host.toLowerCase(Locale.ENGLISH);
+        while (true) {
+            Mode mode = domains.get(domain);
+            if (mode != null) {
+                return mode;
+            }
+            int dot = domain.indexOf('.');
+            if (dot < 0) {
+                return defaultMode;
+            }
+            domain = domain.substring(dot + 1);
+        }
+    }
+
+    /**
+     * @param path          The path of a resource URL, or null.
+     * @return              Whether the resource is not loaded while saving data.
+     */
+    static boolean isDeferred(String path) {
+        if (path == null) {
+            return false;
+        }
+        for (String extension : DEFERRED_EXTENSIONS) {
+            if (path.regionMatches(true, path.length() - extension.length(), extension, 0, extension.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
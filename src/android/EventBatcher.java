@@ -0,0 +1,106 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/**
+ * Buffers browser events and delivers them to JavaScript as one JSON array per
+ * window, instead of one plugin result per event.
+ *
+ * Events can be added from any thread; deliveries happen on the UI thread, or
+ * on the calling thread of flush().
+ */
+class EventBatcher {
+
+    /**
+     * Receives the buffered events.
+     */
+    interface Delivery {
+        void deliver(JSONArray events);
+    }
+
+    private final Delivery delivery;
+    private final long windowMillis;
+    private final boolean collapseRedirects;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ArrayList<JSONObject> pending = new ArrayList<JSONObject>();
+    private boolean flushScheduled = false;
+
+    private final Runnable flushRunnable = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param delivery          Where the batches go.
+     * @param windowMillis      How long an event may wait for others before being delivered.
+     * @param collapseRedirects Keep only the last of consecutive loadstart events.
+     */
+    EventBatcher(Delivery delivery, long windowMillis, boolean collapseRedirects) {
+        this.delivery = delivery;
+        this.windowMillis = windowMillis;
+        this.collapseRedirects = collapseRedirects;
+    }
+
+    /**
+     * Queue an event, to be delivered at the end of the current window.
+     */
+    synchronized void add(JSONObject event) {
+        if (collapseRedirects && isLoadStart(event) && !pending.isEmpty() && isLoadStart(pending.get(pending.size() - 1))) {
+            // A redirect: the page that started loading was never shown
+            pending.set(pending.size() - 1, event);
+        } else {
+            pending.add(event);
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, windowMillis);
+        }
+    }
+
+    /**
+     * Deliver every queued event now. Delivered under the lock, so that a
+     * timer flush on the UI thread has finished delivering before a flush
+     * from another thread returns, e.g. the one before the exit event.
+     */
+    synchronized void flush() {
+        if (flushScheduled) {
+            handler.removeCallbacks(flushRunnable);
+            flushScheduled = false;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        JSONArray events = new JSONArray(pending);
+        pending.clear();
+        delivery.deliver(events);
+    }
+
+    private static boolean isLoadStart(JSONObject event) {
+        return "loadstart".equals(event.optString("type"));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import java.util.Arrays;
+
+/**
+ * Host names and their subdomains, e.g. "example.com" matching "example.com"
+ * and "ads.example.com" but not "badexample.com".
+ *
+ * Hosts are stored reversed, one character per node, in parallel arrays, so
+ * that a lookup walks the host from its end without allocating. Each host
+ * carries flags, and a lookup returns the flags of every stored suffix of the
+ * host. Add everything first, lookups are then safe from any thread.
+ */
+class HostSuffixTrie {
+
+    private static final int ROOT = 0;
+
+    private char[] labels = new char[256];
+    private int[] firstChild = new int[256];
+    private int[] nextSibling = new int[256];
+    private int[] flags = new int[256];
+    private int size = 1;
+
+    HostSuffixTrie() {
+        firstChild[ROOT] = -1;
+        nextSibling[ROOT] = -1;
+    }
+
+    /**
+     * @param host          The host, lower case.
+     * @param hostFlags     Flags to return for it and its subdomains, not 0.
+     */
+    void add(String host, int hostFlags) {
+        int node = ROOT;
+        for (int i = host.length() - 1; i >= 0; i--) {
+            char c = host.charAt(i);
+            int child = findChild(node, c);
+            if (child < 0) {
+                child = newNode(c);
+                nextSibling[child] = firstChild[node];
+                firstChild[node] = child;
+            }
+            node = child;
+        }
+        flags[node] |= hostFlags;
+    }
+
+    /**
+     * @param host          The host to look up.
+     * @param start         Where the host starts in it.
+     * @param end           Where the host ends in it.
+     * @return              The flags of every stored host that is the host or one of
+     *                      its parent domains, 0 if there is none.
+     */
+    int match(CharSequence host, int start, int end) {
+        int result = 0;
+        int node = ROOT;
+        for (int i = end - 1; i >= start; i--) {
+            node = findChild(node, Character.toLowerCase(host.charAt(i)));
+            if (node < 0) {
+                break;
+            }
+            if (flags[node] != 0 && (i == start || host.charAt(i - 1) == '.')) {
+                result |= flags[node];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of nodes, for logging
+     */
+    int size() {
+        return size;
+    }
+
+    private int findChild(int node, char c) {
+        for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+            if (labels[child] == c) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    private int newNode(char c) {
+        if (size == labels.length) {
+            int capacity = size * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        int node = size++;
+        labels[node] = c;
+        firstChild[node] = -1;
+        nextSibling[node] = -1;
+        flags[node] = 0;
+        return node;
+    }
+}
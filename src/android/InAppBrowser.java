@@ -19,26 +19,29 @@
 package org.apache.cordova.inappbrowser;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.app.Activity;
 import org.apache.cordova.inappbrowser.InAppBrowserDialog;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ComponentCallbacks2;
 import android.content.DialogInterface;
 import android.provider.Browser;
-import android.content.res.Resources;
 import android.content.res.AssetManager;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
-import android.graphics.Typeface;
-import android.graphics.Paint;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
 import android.text.InputType;
 import android.util.Log;
-import android.util.TypedValue;
-import android.view.Gravity;
 import android.view.KeyEvent;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewStub;
 import android.view.Window;
 import android.view.WindowManager;
 import android.view.WindowManager.LayoutParams;
@@ -46,40 +49,47 @@ import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputMethodManager;
 import android.webkit.CookieManager;
 import android.webkit.JavascriptInterface;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.widget.Button;
+import android.widget.FrameLayout;
 import android.widget.TextView;
-import android.widget.LinearLayout;
-import android.widget.RelativeLayout;
 import android.widget.ProgressBar;
 import android.app.AlertDialog;
 
 import org.apache.cordova.CallbackContext;
-import org.apache.cordova.Config;
 import org.apache.cordova.CordovaArgs;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CordovaWebView;
 import org.apache.cordova.LOG;
-import org.apache.cordova.PluginManager;
 import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.StringTokenizer;
-import java.io.InputStream;
-import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 @SuppressLint("SetJavaScriptEnabled")
 public class InAppBrowser extends CordovaPlugin {
 
-    private static final int TOUCH_SIZE = 48;
-    private static final int TOOLBAR_HEIGHT = 56;
-    private static final int TOOLBAR_PADDING = 6;
+    private static final String CLOSE_ICON = "www/assets/images/icon-close@3x.png";
+    private static final String COUPON_ICON = "www/assets/images/icon-code@3x.png";
+    private static final String BACK_ICON = "www/assets/images/icon-back@3x.png";
+    private static final String FORWARD_ICON = "www/assets/images/icon-forward@3x.png";
+    private static final String TOOLBAR_FONT = "www/assets/fonts/source-sans/SourceSansPro-Regular.ttf";
 
     private static final String NULL = "null";
     protected static final String LOG_TAG = "InAppBrowser";
@@ -87,32 +97,75 @@ public class InAppBrowser extends CordovaPlugin {
     private static final String SYSTEM = "_system";
     private static final String BLANK = "_blank";
     private static final String EXIT_EVENT = "exit";
-    private static final String ZOOM = "zoom";
-    private static final String HIDDEN = "hidden";
     private static final String LOAD_START_EVENT = "loadstart";
     private static final String LOAD_STOP_EVENT = "loadstop";
     private static final String LOAD_ERROR_EVENT = "loaderror";
-    private static final String CLEAR_ALL_CACHE = "clearcache";
-    private static final String CLEAR_SESSION_CACHE = "clearsessioncache";
-    private static final String HARDWARE_BACK_BUTTON = "hardwareback";
-    private static final String REDIRECT_INTERFACE = "meliuzredirectinterface";
-
-    private InAppBrowserDialog dialog;
-    private WebView inAppWebView;
-    private TextView titleView;
-    private TextView cashbackView;
-    private ProgressBar loadingProgressBar;
-    private Button closeButton;
-    private Button couponCodeButton;
-    private Button backButton;
-    private Button forwardButton;
-    private CallbackContext callbackContext;
-    private boolean meliuzRedirectInterface = false;
-    private boolean showZoomControls = true;
-    private boolean openWindowHidden = false;
-    private boolean clearAllCache= false;
-    private boolean clearSessionCache=false;
-    private boolean hadwareBackButton=true;
+    private static final String MEMORY_EVENT = "memory";
+
+    // What is shed at each memory pressure tier, see trimMemory()
+    private static final int TRIM_ASSETS = 1;
+    private static final int TRIM_SPARE_WINDOWS = 2;
+    private static final int TRIM_CACHES = 3;
+    private static final int TRIM_HIDDEN_BROWSERS = 4;
+
+    // Status lines of the error page
+    private static final String ERROR_RETRYING = "Tentando de novo...";
+    private static final String ERROR_RETRY_IN = "Tentando de novo em %d s";
+    private static final String ERROR_OFFLINE = "Sem conexão. Tentaremos de novo assim que ela voltar.";
+    private static final String ERROR_GAVE_UP = "Tente de novo daqui a pouco.";
+
+    private static final ScriptTemplate SCRIPT_FILE_TEMPLATE = new ScriptTemplate("(function(d) { var c = d.createElement('script'); c.src = %s; d.body.appendChild(c); })(document)");
+    private static final ScriptTemplate STYLE_CODE_TEMPLATE = new ScriptTemplate("(function(d) { var c = d.createElement('style'); c.innerHTML = %s; d.body.appendChild(c); })(document)");
+    private static final ScriptTemplate STYLE_FILE_TEMPLATE = new ScriptTemplate("(function(d) { var c = d.createElement('link'); c.rel='stylesheet'; c.type='text/css'; c.href = %s; d.head.appendChild(c); })(document)");
+
+    private static final String WARM_POOL_SIZE_PREFERENCE = "InAppBrowserWarmPoolSize";
+    private static final int MAX_WARM_POOL_SIZE = 3;
+    private static final String EVENT_BATCH_WINDOW_PREFERENCE = "InAppBrowserEventBatchWindow";
+    // One frame at 60 fps
+    private static final int DEFAULT_EVENT_BATCH_WINDOW = 16;
+    private static final String PRERENDER_LIMIT_PREFERENCE = "InAppBrowserPrerenderLimit";
+    private static final int DEFAULT_PRERENDER_LIMIT = 2;
+    private static final int MAX_PRERENDER_LIMIT = 4;
+    private static final String RESOURCE_CACHE_SIZE_PREFERENCE = "InAppBrowserResourceCacheSize";
+    // In megabytes
+    private static final int DEFAULT_RESOURCE_CACHE_SIZE = 20;
+    // An asset path, e.g. "www/blocklist.txt"
+    private static final String CONTENT_BLOCKER_RULES_PREFERENCE = "InAppBrowserContentBlockerRules";
+    // Comma separated hosts
+    private static final String CONTENT_BLOCKER_WHITELIST_PREFERENCE = "InAppBrowserContentBlockerWhitelist";
+    // The Cordova preference for JavaScript to keep running in the background
+    private static final String KEEP_RUNNING_PREFERENCE = "KeepRunning";
+    // Comma separated "domain=mode" pairs
+    private static final String DATA_SAVER_DOMAINS_PREFERENCE = "InAppBrowserDataSaverDomains";
+    // Navigations kept for the getMetrics percentiles
+    private static final int METRICS_SAMPLES = 100;
+
+    private volatile String databasePath;
+    private final HashMap<String, Integer> resourceIds = new HashMap<String, Integer>();
+    private final ScriptResultChannel scriptResults = new ScriptResultChannel();
+    private final NavigationMetrics navigationMetrics = new NavigationMetrics(METRICS_SAMPLES);
+    // The open browsers, by the id of their JavaScript InAppBrowser object
+    private final ConcurrentHashMap<String, BrowserSession> sessions = new ConcurrentHashMap<String, BrowserSession>();
+    private WebViewPool webViewPool;
+    private PrerenderCache prerenderCache;
+    private NavigationPolicy navigationPolicy;
+    private SchemeRouter schemeRouter;
+    private ComponentCallbacks2 memoryCallbacks;
+    private ResourceCache resourceCache;
+    // Null until the rules are loaded
+    private volatile ContentBlocker contentBlocker;
+    private DataSaverPolicy dataSaverPolicy;
+    // Started by the first window with datasaver=auto
+    private ConnectivityMonitor connectivityMonitor;
+    // Whether the activity is in the background, only used on the UI thread
+    private boolean backgrounded = false;
+    // The WebView pauseTimers() was called on, if it has been
+    private WebView timersPausedBy;
+    // Whether a visible pausehost browser has the Cordova WebView paused, only used on the UI thread
+    private boolean hostSuspended = false;
+    // The Android WebView of the Cordova WebView, looked up once
+    private WebView hostWebView;
+    private boolean hostWebViewLooked = false;
 
     /**
      * Executes the request and returns PluginResult.
@@ -124,14 +177,20 @@ public class InAppBrowser extends CordovaPlugin {
      */
     public boolean execute(String action, CordovaArgs args, final CallbackContext callbackContext) throws JSONException {
         if (action.equals("open")) {
-            this.callbackContext = callbackContext;
             final String url = args.getString(0);
             String t = args.optString(1);
             if (t == null || t.equals("") || t.equals(NULL)) {
                 t = SELF;
             }
             final String target = t;
-            final HashMap<String, Boolean> features = parseFeature(args.optString(2));
+            BrowserOptions options = BrowserOptions.parse(args.optString(2));
+            String sessionId = args.optString(3);
+            if (sessionId == null || sessionId.length() == 0) {
+                sessionId = callbackContext.getCallbackId();
+            }
+            // Registered right away, so that calls made before the window is up find it
+            final BrowserSession session = new BrowserSession(sessionId, options, callbackContext);
+            sessions.put(session.id, session);
 
             Log.d(LOG_TAG, "target = " + target);
 
@@ -139,56 +198,24 @@ public class InAppBrowser extends CordovaPlugin {
                 @Override
                 public void run() {
                     String result = "";
+                    boolean shown = false;
                     // SELF
                     if (SELF.equals(target)) {
                         Log.d(LOG_TAG, "in self");
-                        /* This code exists for compatibility between 3.x and 4.x versions of Cordova.
-                         * Previously the Config class had a static method, isUrlWhitelisted(). That
-                         * responsibility has been moved to the plugins, with an aggregating method in
-                         * PluginManager.
-                         */
-                        Boolean shouldAllowNavigation = null;
-                        if (url.startsWith("javascript:")) {
-                            shouldAllowNavigation = true;
-                        }
-                        if (shouldAllowNavigation == null) {
-                            try {
-                                Method iuw = Config.class.getMethod("isUrlWhiteListed", String.class);
-                                shouldAllowNavigation = (Boolean)iuw.invoke(null, url);
-                            } catch (NoSuchMethodException e) {
-                            } catch (IllegalAccessException e) {
-                            } catch (InvocationTargetException e) {
-                            }
-                        }
-                        if (shouldAllowNavigation == null) {
-                            try {
-                                Method gpm = webView.getClass().getMethod("getPluginManager");
-                                PluginManager pm = (PluginManager)gpm.invoke(webView);
-                                Method san = pm.getClass().getMethod("shouldAllowNavigation", String.class);
-                                shouldAllowNavigation = (Boolean)san.invoke(pm, url);
-                            } catch (NoSuchMethodException e) {
-                            } catch (IllegalAccessException e) {
-                            } catch (InvocationTargetException e) {
-                            }
-                        }
                         // load in webview
-                        if (Boolean.TRUE.equals(shouldAllowNavigation)) {
+                        if (navigationPolicy.shouldAllowNavigation(url)) {
                             Log.d(LOG_TAG, "loading in webview");
                             webView.loadUrl(url);
-                        } else if (url.startsWith(WebView.SCHEME_TEL)) {
-                            // Load the dialer
-                            try {
-                                Log.d(LOG_TAG, "loading in dialer");
-                                Intent intent = new Intent(Intent.ACTION_DIAL);
-                                intent.setData(Uri.parse(url));
-                                cordova.getActivity().startActivity(intent);
-                            } catch (android.content.ActivityNotFoundException e) {
-                                LOG.e(LOG_TAG, "Error dialing " + url + ": " + e.toString());
-                            }
                         } else {
-                            // load in InAppBrowser
-                            Log.d(LOG_TAG, "loading in InAppBrowser");
-                            result = showWebPage(url, features);
+                            String pageUrl = schemeRouter.open(url);
+                            if (pageUrl == null) {
+                                Log.d(LOG_TAG, "loading in another app");
+                            } else {
+                                // load in InAppBrowser
+                                Log.d(LOG_TAG, "loading in InAppBrowser");
+                                result = showWebPage(session, pageUrl);
+                                shown = true;
+                            }
                         }
                     } else if (SYSTEM.equals(target)) {
                         // SYSTEM
@@ -197,68 +224,402 @@ public class InAppBrowser extends CordovaPlugin {
                     } else {
                         // BLANK - or anything else
                         Log.d(LOG_TAG, "in blank");
-                        result = showWebPage(url, features);
+                        String pageUrl = schemeRouter.open(url);
+                        if (pageUrl == null) {
+                            // Nothing to show, the browser is done
+                            Log.d(LOG_TAG, "loading in another app");
+                            closeDialog(session);
+                        } else {
+                            result = showWebPage(session, pageUrl);
+                            shown = true;
+                        }
+                    }
+                    if (!shown) {
+                        // Opened outside of the InAppBrowser, there is no window to route anything to
+                        sessions.remove(session.id, session);
                     }
 
-                    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
-                    pluginResult.setKeepCallback(true);
-                    callbackContext.sendPluginResult(pluginResult);
+                    session.sendPluginResult(new PluginResult(PluginResult.Status.OK, result), true);
                 }
             });
         } else if (action.equals("close")) {
-            closeDialog();
+            BrowserSession session = getSession(args, 0);
+            if (session != null) {
+                closeDialog(session);
+            }
         } else if (action.equals("injectScriptCode")) {
-            String jsWrapper = null;
             if (args.getBoolean(1)) {
-                jsWrapper = String.format("prompt(JSON.stringify([eval(%%s)]), 'gap-iab://%s')", callbackContext.getCallbackId());
+                injectDeferredObject(getSession(args, 2), args.getString(0), ScriptResultChannel.SCRIPT_CODE, scriptResults.register(callbackContext));
+            } else {
+                injectDeferredObject(getSession(args, 2), args.getString(0), null, null);
             }
-            injectDeferredObject(args.getString(0), jsWrapper);
         } else if (action.equals("injectScriptFile")) {
-            String jsWrapper;
             if (args.getBoolean(1)) {
-                jsWrapper = String.format("(function(d) { var c = d.createElement('script'); c.src = %%s; c.onload = function() { prompt('', 'gap-iab://%s'); }; d.body.appendChild(c); })(document)", callbackContext.getCallbackId());
+                injectDeferredObject(getSession(args, 2), args.getString(0), ScriptResultChannel.SCRIPT_FILE, scriptResults.register(callbackContext));
             } else {
-                jsWrapper = "(function(d) { var c = d.createElement('script'); c.src = %s; d.body.appendChild(c); })(document)";
+                injectDeferredObject(getSession(args, 2), args.getString(0), SCRIPT_FILE_TEMPLATE, null);
             }
-            injectDeferredObject(args.getString(0), jsWrapper);
         } else if (action.equals("injectStyleCode")) {
-            String jsWrapper;
             if (args.getBoolean(1)) {
-                jsWrapper = String.format("(function(d) { var c = d.createElement('style'); c.innerHTML = %%s; d.body.appendChild(c); prompt('', 'gap-iab://%s');})(document)", callbackContext.getCallbackId());
+                injectDeferredObject(getSession(args, 2), args.getString(0), ScriptResultChannel.STYLE_CODE, scriptResults.register(callbackContext));
             } else {
-                jsWrapper = "(function(d) { var c = d.createElement('style'); c.innerHTML = %s; d.body.appendChild(c); })(document)";
+                injectDeferredObject(getSession(args, 2), args.getString(0), STYLE_CODE_TEMPLATE, null);
             }
-            injectDeferredObject(args.getString(0), jsWrapper);
         } else if (action.equals("injectStyleFile")) {
-            String jsWrapper;
             if (args.getBoolean(1)) {
-                jsWrapper = String.format("(function(d) { var c = d.createElement('link'); c.rel='stylesheet'; c.type='text/css'; c.href = %%s; d.head.appendChild(c); prompt('', 'gap-iab://%s');})(document)", callbackContext.getCallbackId());
+                injectDeferredObject(getSession(args, 2), args.getString(0), ScriptResultChannel.STYLE_FILE, scriptResults.register(callbackContext));
             } else {
-                jsWrapper = "(function(d) { var c = d.createElement('link'); c.rel='stylesheet'; c.type='text/css'; c.href = %s; d.head.appendChild(c); })(document)";
+                injectDeferredObject(getSession(args, 2), args.getString(0), STYLE_FILE_TEMPLATE, null);
+            }
+        } else if (action.equals("addUserScript")) {
+            BrowserSession session = getSession(args, 5);
+            if (session == null) {
+                callbackContext.error("The browser has been closed");
+                return true;
+            }
+            JSONArray urlPatterns = args.optJSONArray(4);
+            String[] patterns = new String[urlPatterns == null ? 0 : urlPatterns.length()];
+            for (int i = 0; i < patterns.length; i++) {
+                patterns[i] = urlPatterns.getString(i);
             }
-            injectDeferredObject(args.getString(0), jsWrapper);
-        } else if (action.equals("show")) {
+            int id = session.userScripts.add("style".equals(args.getString(0)), args.getBoolean(2), args.getString(1), args.optString(3), patterns);
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, id));
+        } else if (action.equals("removeUserScript")) {
+            BrowserSession session = getSession(args, 1);
+            if (session != null) {
+                session.userScripts.remove(args.optInt(0));
+            }
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+        } else if (action.equals("prerender")) {
+            final String url = args.getString(0);
             this.cordova.getActivity().runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
-                    dialog.show();
+                    if (prerenderCache.prerender(url)) {
+                        callbackContext.success();
+                    } else {
+                        callbackContext.error("Prerendering is disabled on this device");
+                    }
+                }
+            });
+        } else if (action.equals("cancelPrerender")) {
+            final String url = args.getString(0);
+            this.cordova.getActivity().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    prerenderCache.remove(url);
+                    callbackContext.success();
+                }
+            });
+        } else if (action.equals("getMetrics")) {
+            JSONObject metrics = navigationMetrics.toJSON();
+            metrics.put("memory", getMemoryInfo());
+            callbackContext.success(metrics);
+        } else if (action.equals("show") || action.equals("hide")) {
+            final BrowserSession session = getSession(args, 0);
+            if (session == null) {
+                return true;
+            }
+            final boolean show = action.equals("show");
+            this.cordova.getActivity().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    InAppBrowserWindow window = session.window;
+                    if (window == null) {
+                        return;
+                    }
+                    window.setHidden(!show);
+                    updateHostSuspended();
                 }
             });
-            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK);
-            pluginResult.setKeepCallback(true);
-            this.callbackContext.sendPluginResult(pluginResult);
+            session.sendPluginResult(new PluginResult(PluginResult.Status.OK), true);
+        } else if (action.equals("setDataSaver")) {
+            final BrowserSession session = getSession(args, 1);
+            if (session == null) {
+                return true;
+            }
+            session.dataSaverOverride = args.optBoolean(0) ? DataSaverPolicy.Mode.YES : DataSaverPolicy.Mode.NO;
+            this.cordova.getActivity().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    InAppBrowserWindow window = session.window;
+                    if (window != null) {
+                        updateDataSaver(session, window.webView.getUrl());
+                    }
+                }
+            });
+            session.sendPluginResult(new PluginResult(PluginResult.Status.OK), true);
         } else {
             return false;
         }
         return true;
     }
 
+    /**
+     * Called after the plugin is constructed. Starts decoding the toolbar assets,
+     * and sets up the prerendered pages and the warm WebView pool when it is
+     * enabled in config.xml.
+     */
+    @Override
+    protected void pluginInitialize() {
+        navigationPolicy = new NavigationPolicy(webView);
+        schemeRouter = new SchemeRouter(cordova.getActivity());
+        dataSaverPolicy = new DataSaverPolicy(getStringPreference(DATA_SAVER_DOMAINS_PREFERENCE, null));
+        connectivityMonitor = new ConnectivityMonitor(cordova.getActivity(), new ConnectivityMonitor.Listener() {
+            @Override
+            public void onConnectedChanged(boolean connected) {
+                if (!connected) {
+                    return;
+                }
+                // Pages that failed to load get a new round of attempts
+                for (BrowserSession session : sessions.values()) {
+                    InAppBrowserWindow window = session.window;
+                    if (window != null && window.loadFailures.getUrl() != null) {
+                        window.loadFailures.newRound();
+                        retryLoad(window);
+                    }
+                }
+            }
+
+            @Override
+            public void onConstrainedChanged(boolean constrained) {
+                for (BrowserSession session : sessions.values()) {
+                    InAppBrowserWindow window = session.window;
+                    if (window != null) {
+                        updateDataSaver(session, window.webView.getUrl());
+                    }
+                }
+            }
+        });
+
+        // Have the assets decoded before the first open needs them
+        cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                preloadAssets();
+                getDatabasePath();
+            }
+        });
+
+        final String contentBlockerRules = getStringPreference(CONTENT_BLOCKER_RULES_PREFERENCE, null);
+        if (contentBlockerRules != null) {
+            final String whitelist = getStringPreference(CONTENT_BLOCKER_WHITELIST_PREFERENCE, "");
+            cordova.getThreadPool().execute(new Runnable() {
+                public void run() {
+                    loadContentBlocker(contentBlockerRules, whitelist.split(","));
+                }
+            });
+        }
+
+        int prerenderLimit = Math.min(getIntPreference(PRERENDER_LIMIT_PREFERENCE, DEFAULT_PRERENDER_LIMIT), MAX_PRERENDER_LIMIT);
+        prerenderCache = new PrerenderCache(cordova.getActivity(), new PrerenderCache.Factory() {
+            @Override
+            public InAppBrowserWindow createWindow() {
+                return createWebView();
+            }
+        }, schemeRouter, prerenderLimit);
+
+        int poolSize = Math.min(getIntPreference(WARM_POOL_SIZE_PREFERENCE, 0), MAX_WARM_POOL_SIZE);
+        if (poolSize > 0) {
+            webViewPool = new WebViewPool(new WebViewPool.Factory() {
+                @Override
+                public InAppBrowserWindow createWindow() {
+                    return InAppBrowser.this.createWindow();
+                }
+            }, poolSize);
+            cordova.getActivity().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    webViewPool.scheduleFill();
+                }
+            });
+        }
+
+        memoryCallbacks = new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(TRIM_MEMORY_COMPLETE);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        };
+        cordova.getActivity().getApplicationContext().registerComponentCallbacks(memoryCallbacks);
+    }
+
+    /**
+     * Shed browser resources as memory pressure rises, each tier adding to the
+     * previous ones:
+     *
+     * 1. the decoded toolbar assets, decoded again when a window is built;
+     * 2. the windows that are not shown: the warm pool and the prerendered
+     *    pages;
+     * 3. the in-memory WebView caches;
+     * 4. the hidden browsers, which are closed.
+     *
+     * The app leaving the foreground (TRIM_MEMORY_UI_HIDDEN, and
+     * TRIM_MEMORY_BACKGROUND once it is cached) is no memory pressure yet, so
+     * only the first tier is shed, silently. Otherwise the open browsers then
+     * get a memory event saying what was shed. Called on the UI thread.
+     *
+     * @param level         The ComponentCallbacks2 trim level.
+     */
+    private void trimMemory(int level) {
+        int tier;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            tier = TRIM_HIDDEN_BROWSERS;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            tier = TRIM_CACHES;
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            tier = TRIM_SPARE_WINDOWS;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            // Includes the UI being hidden and the app being in the background
+            tier = TRIM_ASSETS;
+        } else {
+            return;
+        }
+
+        AssetCache.clear();
+        if (level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN || level == ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return;
+        }
+
+        int spareWindows = 0;
+        if (tier >= TRIM_SPARE_WINDOWS) {
+            if (webViewPool != null) {
+                spareWindows += webViewPool.trim();
+            }
+            spareWindows += prerenderCache.clear();
+        }
+
+        boolean cachesCleared = false;
+        if (tier >= TRIM_CACHES) {
+            for (BrowserSession session : sessions.values()) {
+                InAppBrowserWindow window = session.window;
+                if (window != null) {
+                    // The cache is shared by every WebView of the app, clearing it once is enough
+                    window.webView.clearCache(false);
+                    cachesCleared = true;
+                    break;
+                }
+            }
+        }
+
+        // Already paused, see InAppBrowserWindow.setHidden()
+        ArrayList<BrowserSession> hidden = new ArrayList<BrowserSession>();
+        if (tier >= TRIM_HIDDEN_BROWSERS) {
+            for (BrowserSession session : sessions.values()) {
+                InAppBrowserWindow window = session.window;
+                if (window != null && window.isHidden()) {
+                    hidden.add(session);
+                }
+            }
+        }
+
+        Log.d(LOG_TAG, "Memory trim level " + level + ": tier " + tier + ", " + spareWindows + " spare windows released, "
+                + hidden.size() + " hidden browsers closed");
+        try {
+            JSONObject obj = new JSONObject();
+            obj.put("type", MEMORY_EVENT);
+            obj.put("level", level);
+            obj.put("tier", tier);
+            obj.put("spareWindows", spareWindows);
+            obj.put("caches", cachesCleared);
+            obj.put("closed", hidden.size());
+            for (BrowserSession session : sessions.values()) {
+                session.sendUpdate(obj, true, PluginResult.Status.OK);
+            }
+        } catch (JSONException ex) {
+            Log.d(LOG_TAG, "Should never happen");
+        }
+
+        for (BrowserSession session : hidden) {
+            closeDialog(session);
+        }
+    }
+
+    /**
+     * Called when the activity goes to the background. The browser WebViews are
+     * paused, and so are the JavaScript timers of every WebView of the app
+     * while a browser is open, unless the app keeps running in the background.
+     *
+     * @param multitasking      Flag indicating if multitasking is turned on for app
+     */
+    @Override
+    public void onPause(boolean multitasking) {
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                backgrounded = true;
+                WebView anyWebView = null;
+                for (BrowserSession session : sessions.values()) {
+                    InAppBrowserWindow window = session.window;
+                    if (window != null) {
+                        window.setBackgrounded(true);
+                        anyWebView = window.webView;
+                    }
+                }
+                prerenderCache.setPaused(true);
+                // pauseTimers() applies to the whole process, the Cordova WebView included
+                if (anyWebView != null && !getBooleanPreference(KEEP_RUNNING_PREFERENCE, true)) {
+                    anyWebView.pauseTimers();
+                    timersPausedBy = anyWebView;
+                }
+            }
+        });
+    }
+
+    /**
+     * Called when the activity comes back to the foreground. Apps may have been
+     * installed in the meantime.
+     *
+     * @param multitasking      Flag indicating if multitasking is turned on for app
+     */
+    @Override
+    public void onResume(boolean multitasking) {
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                backgrounded = false;
+                schemeRouter.clear();
+                if (timersPausedBy != null) {
+                    timersPausedBy.resumeTimers();
+                    timersPausedBy = null;
+                }
+                // Cordova resumes its WebView before telling the plugins
+                if (hostSuspended) {
+                    WebView host = getHostWebView();
+                    if (host != null) {
+                        host.onPause();
+                    }
+                }
+                for (BrowserSession session : sessions.values()) {
+                    InAppBrowserWindow window = session.window;
+                    if (window != null) {
+                        window.setBackgrounded(false);
+                    }
+                }
+                prerenderCache.setPaused(false);
+                // Emptied if memory ran low meanwhile, the app is about to be used again
+                if (webViewPool != null) {
+                    webViewPool.refill();
+                }
+            }
+        });
+    }
+
     /**
      * Called when the view navigates.
      */
     @Override
     public void onReset() {
-        closeDialog();
+        closeAllDialogs();
+        navigationPolicy.clear();
     }
 
     /**
@@ -266,7 +627,203 @@ public class InAppBrowser extends CordovaPlugin {
      * Stop listener.
      */
     public void onDestroy() {
-        closeDialog();
+        closeAllDialogs();
+        if (memoryCallbacks != null) {
+            cordova.getActivity().getApplicationContext().unregisterComponentCallbacks(memoryCallbacks);
+            memoryCallbacks = null;
+        }
+        final WebViewPool pool = webViewPool;
+        final PrerenderCache prerendered = prerenderCache;
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                connectivityMonitor.stop();
+                if (pool != null) {
+                    pool.clear();
+                }
+                if (prerendered != null) {
+                    prerendered.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Read an integer preference from config.xml. Cordova copies the preferences
+     * into the intent extras, either as an Integer or as a String.
+     *
+     * @param name          The preference name.
+     * @param defaultValue  The value to use when the preference is not set or invalid.
+     * @return              The preference value.
+     */
+    private int getIntPreference(String name, int defaultValue) {
+        Object value = getPreference(name);
+        if (value instanceof Integer) {
+            return ((Integer) value).intValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Integer.parseInt((String) value);
+            } catch (NumberFormatException e) {
+                Log.d(LOG_TAG, "Invalid value for " + name + ": " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Read a boolean preference from config.xml, stored either as a Boolean or as a String.
+     *
+     * @param name          The preference name.
+     * @param defaultValue  The value to use when the preference is not set.
+     * @return              The preference value.
+     */
+    private boolean getBooleanPreference(String name, boolean defaultValue) {
+        Object value = getPreference(name);
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue();
+        }
+        if (value instanceof String) {
+            return Boolean.parseBoolean((String) value);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Read a string preference from config.xml.
+     *
+     * @param name          The preference name.
+     * @param defaultValue  The value to use when the preference is not set or empty.
+     * @return              The preference value.
+     */
+    private String getStringPreference(String name, String defaultValue) {
+        Object value = getPreference(name);
+        if (value == null || value.toString().length() == 0) {
+            return defaultValue;
+        }
+        return value.toString();
+    }
+
+    /**
+     * @return the preference from the intent extras, where Cordova may have lower cased its name, or null
+     */
+    private Object getPreference(String name) {
+        Bundle appSettings = cordova.getActivity().getIntent().getExtras();
+        if (appSettings == null) {
+            return null;
+        }
+        Object value = appSettings.get(name.toLowerCase(Locale.ENGLISH));
+        if (value == null) {
+            value = appSettings.get(name);
+        }
+        return value;
+    }
+
+    /**
+     * Build the content blocker from a rules file in the app assets. Runs on
+     * the thread pool; windows opened before it is done are not filtered.
+     *
+     * @param assetPath     The rules file, e.g. "www/blocklist.txt".
+     * @param whitelist     Hosts that are never blocked.
+     */
+    private void loadContentBlocker(String assetPath, String[] whitelist) {
+        BufferedReader reader = null;
+        try {
+            long start = SystemClock.elapsedRealtime();
+            reader = new BufferedReader(new InputStreamReader(cordova.getActivity().getAssets().open(assetPath), "UTF-8"));
+            ContentBlocker blocker = ContentBlocker.load(reader, whitelist);
+            contentBlocker = blocker;
+            Log.d(LOG_TAG, "Loaded " + blocker.getRuleCount() + " content blocker rules in " + (SystemClock.elapsedRealtime() - start) + " ms");
+        } catch (IOException e) {
+            LOG.e(LOG_TAG, "Error loading content blocker rules from " + assetPath + ": " + e.toString());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Turn data saving on or off for a window, from the mode of its page
+     * domain or options and from the connection. While saving data, images
+     * wait until it is turned off, and fonts and media are not loaded.
+     * Must be called on the UI thread.
+     *
+     * @param session       The browser.
+     * @param url           The page it is loading, or null.
+     */
+    private void updateDataSaver(BrowserSession session, String url) {
+        InAppBrowserWindow window = session.window;
+        if (window == null) {
+            return;
+        }
+        DataSaverPolicy.Mode mode = session.dataSaverOverride;
+        if (mode == null) {
+            mode = dataSaverPolicy.modeFor(url == null ? null : Uri.parse(url).getHost(), session.options.dataSaver);
+        }
+        session.dataSaverAuto = mode == DataSaverPolicy.Mode.AUTO;
+        if (session.dataSaverAuto) {
+            connectivityMonitor.start();
+        } else {
+            updateConnectivityMonitor();
+        }
+        boolean saving = mode == DataSaverPolicy.Mode.YES || (mode == DataSaverPolicy.Mode.AUTO && connectivityMonitor.isConstrained());
+        session.savingData = saving;
+        WebSettings settings = window.webView.getSettings();
+        // Turning it back on loads the images the page is missing
+        if (settings.getLoadsImagesAutomatically() == saving) {
+            settings.setLoadsImagesAutomatically(!saving);
+        }
+    }
+
+    /**
+     * Stop following connectivity once no window waits for the connection to
+     * retry a page, nor saves data depending on it. Must be called on the UI
+     * thread.
+     */
+    private void updateConnectivityMonitor() {
+        for (BrowserSession session : sessions.values()) {
+            InAppBrowserWindow window = session.window;
+            if (window != null && (window.loadFailures.getUrl() != null || session.dataSaverAuto)) {
+                return;
+            }
+        }
+        connectivityMonitor.stop();
+    }
+
+    /**
+     * @return the browser windows alive, open or spare, and the heap sizes in
+     *         bytes, for checking that closed windows are released
+     */
+    private JSONObject getMemoryInfo() throws JSONException {
+        Runtime runtime = Runtime.getRuntime();
+        JSONObject obj = new JSONObject();
+        obj.put("windows", InAppBrowserWindow.getLiveCount());
+        obj.put("javaHeap", runtime.totalMemory() - runtime.freeMemory());
+        obj.put("nativeHeap", Debug.getNativeHeapAllocatedSize());
+        return obj;
+    }
+
+    /**
+     * @return an empty response, for resources that must not be loaded
+     */
+    private static WebResourceResponse emptyResponse() {
+        return new WebResourceResponse("text/plain", "UTF-8", new ByteArrayInputStream(new byte[0]));
+    }
+
+    /**
+     * Look up the session a call is made for.
+     *
+     * @param args          The call arguments.
+     * @param index         Where the session id is in them.
+     * @return              The session, or null if it has been closed.
+     */
+    private BrowserSession getSession(CordovaArgs args, int index) {
+        String id = args.optString(index);
+        return id == null ? null : sessions.get(id);
     }
 
     /**
@@ -275,67 +832,39 @@ public class InAppBrowser extends CordovaPlugin {
      * This is a helper method for the inject{Script|Style}{Code|File} API calls, which
      * provides a consistent method for injecting JavaScript code into the document.
      *
-     * If a wrapper string is supplied, then the source string will be JSON-encoded (adding
-     * quotes) and wrapped using string formatting. (The wrapper string should have a single
-     * '%s' marker)
+     * If a wrapper template is supplied, then the source string will be JSON-encoded (adding
+     * quotes) and wrapped using the template.
      *
+     * @param session     The browser to inject into, nothing is done if it is null.
      * @param source      The source object (filename or script/style text) to inject into
      *                    the document.
-     * @param jsWrapper   A JavaScript string to wrap the source string in, so that the object
+     * @param jsWrapper   A template to wrap the source string in, so that the object
      *                    is properly injected, or null if the source string is JavaScript text
      *                    which should be executed directly.
+     * @param callbackId  The ScriptResultChannel id, for templates that post a result.
      */
-    private void injectDeferredObject(String source, String jsWrapper) {
+    private void injectDeferredObject(final BrowserSession session, String source, ScriptTemplate jsWrapper, String callbackId) {
+        if (session == null) {
+            return;
+        }
         String scriptToInject;
         if (jsWrapper != null) {
-            org.json.JSONArray jsonEsc = new org.json.JSONArray();
-            jsonEsc.put(source);
-            String jsonRepr = jsonEsc.toString();
-            String jsonSourceString = jsonRepr.substring(1, jsonRepr.length()-1);
-            scriptToInject = String.format(jsWrapper, jsonSourceString);
+            scriptToInject = jsWrapper.apply(source, callbackId);
         } else {
             scriptToInject = source;
         }
         final String finalScriptToInject = scriptToInject;
         this.cordova.getActivity().runOnUiThread(new Runnable() {
-            @SuppressLint("NewApi")
             @Override
             public void run() {
-                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
-                    // This action will have the side-effect of blurring the currently focused element
-                    inAppWebView.loadUrl("javascript:" + finalScriptToInject);
-                } else {
-                    inAppWebView.evaluateJavascript(finalScriptToInject, null);
+                InAppBrowserWindow window = session.window;
+                if (window != null) {
+                    ScriptExecutor.execute(window.webView, finalScriptToInject);
                 }
             }
         });
     }
 
-    /**
-     * Put the list of features into a hash map
-     *
-     * @param optString
-     * @return
-     */
-    private HashMap<String, Boolean> parseFeature(String optString) {
-        if (optString.equals(NULL)) {
-            return null;
-        } else {
-            HashMap<String, Boolean> map = new HashMap<String, Boolean>();
-            StringTokenizer features = new StringTokenizer(optString, ",");
-            StringTokenizer option;
-            while(features.hasMoreElements()) {
-                option = new StringTokenizer(features.nextToken(), "=");
-                if (option.hasMoreElements()) {
-                    String key = option.nextToken();
-                    Boolean value = option.nextToken().equals("no") ? Boolean.FALSE : Boolean.TRUE;
-                    map.put(key, value);
-                }
-            }
-            return map;
-        }
-    }
-
     /**
      * Display a new browser with the specified URL.
      *
@@ -366,11 +895,16 @@ public class InAppBrowser extends CordovaPlugin {
 
     /**
      * Shows up the coupon code
+     *
+     * @param window        The window whose coupon is shown.
      */
-    public void couponCodeDialog() {
+    public void couponCodeDialog(InAppBrowserWindow window) {
+        if (window.getCouponCode() == null) {
+            return;
+        }
         new AlertDialog.Builder(cordova.getActivity())
             .setTitle("CÓDIGO DE DESCONTO")
-            .setMessage(this.couponCodeButton.getContentDescription())
+            .setMessage(window.getCouponCode())
             // .setCancelable(true)
             .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
                 public void onClick(DialogInterface dialog, int which) {
@@ -387,688 +921,973 @@ public class InAppBrowser extends CordovaPlugin {
     }
 
     /**
-     * Closes the dialog
+     * Pause the Cordova WebView while a browser opened with pausehost is shown,
+     * and resume it once none is. WebView.onPause() makes the page hidden, so
+     * its timers and animation frames are throttled and nothing is drawn, but
+     * unlike pauseTimers() it leaves the browsers running. The events of every
+     * browser are held meanwhile and sent, in order, when the Cordova WebView
+     * resumes. Must be called on the UI thread.
+     */
+    private void updateHostSuspended() {
+        boolean suspend = false;
+        for (BrowserSession session : sessions.values()) {
+            InAppBrowserWindow window = session.window;
+            if (window != null && session.options.pauseHost && !window.isHidden()) {
+                suspend = true;
+                break;
+            }
+        }
+        if (suspend != hostSuspended) {
+            hostSuspended = suspend;
+            WebView host = getHostWebView();
+            if (host != null) {
+                if (suspend) {
+                    host.onPause();
+                } else {
+                    host.onResume();
+                }
+            }
+            Log.d(LOG_TAG, suspend ? "Cordova WebView paused" : "Cordova WebView resumed");
+        }
+        // Browsers opened meanwhile hold their events too
+        for (BrowserSession session : sessions.values()) {
+            if (suspend) {
+                session.holdResults();
+            } else {
+                session.releaseResults();
+            }
+        }
+    }
+
+    /**
+     * @return the Android WebView behind the Cordova WebView, or null if the
+     *         engine in use has none
+     */
+    private WebView getHostWebView() {
+        if (hostWebViewLooked) {
+            return hostWebView;
+        }
+        hostWebViewLooked = true;
+        Object view = webView;
+        if (!(view instanceof WebView)) {
+            // Cordova 4 and later wrap the view of the engine
+            try {
+                view = webView.getClass().getMethod("getView").invoke(webView);
+            } catch (NoSuchMethodException e) {
+            } catch (IllegalAccessException e) {
+            } catch (InvocationTargetException e) {
+            }
+        }
+        if (view instanceof WebView) {
+            hostWebView = (WebView) view;
+        } else {
+            Log.d(LOG_TAG, "The Cordova WebView is not an Android WebView, pausehost only holds the events");
+        }
+        return hostWebView;
+    }
+
+    /**
+     * Closes the dialog of a session. Does nothing if it is already closed.
+     *
+     * @param session       The session to close.
      */
-    public void closeDialog() {
-        final WebView childView = this.inAppWebView;
+    public void closeDialog(final BrowserSession session) {
         // The JS protects against multiple calls, so this should happen only when
         // closeDialog() is called by other native code.
-        if (childView == null) {
+        if (!session.close()) {
             return;
         }
+        sessions.remove(session.id, session);
+        session.userScripts.clear();
+        final WebViewPool pool = this.webViewPool;
         this.cordova.getActivity().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                childView.setWebViewClient(new WebViewClient() {
+                // Not attached yet: attachWindow() sees the session is closed and never will be
+                final InAppBrowserWindow window = session.window;
+                if (window == null) {
+                    return;
+                }
+                session.window = null;
+                window.session = null;
+                updateHostSuspended();
+                updateConnectivityMonitor();
+                if (pool == null || !pool.hasRoom() || window.rendererGone) {
+                    // Nothing will reuse it, release the WebView and its renderer right away
+                    window.destroy();
+                    return;
+                }
+                window.webView.setWebViewClient(new InAppBrowserWindow.DetachedClient(window) {
+                    private boolean released = false;
+
                     // NB: wait for about:blank before dismissing
                     public void onPageFinished(WebView view, String url) {
-                        if (dialog != null) {
-                            dialog.dismiss();
+                        if (released) {
+                            return;
                         }
+                        released = true;
+                        window.dialog.dismiss();
+                        pool.release(window);
                     }
                 });
                 // NB: From SDK 19: "If you call methods on WebView from any thread
                 // other than your app's UI thread, it can cause unexpected results."
                 // http://developer.android.com/guide/webapps/migrating.html#Threads
-                childView.loadUrl("about:blank");
+                window.webView.loadUrl("about:blank");
             }
         });
 
         try {
             JSONObject obj = new JSONObject();
             obj.put("type", EXIT_EVENT);
-            sendUpdate(obj, false);
+            session.sendUpdate(obj, false, PluginResult.Status.OK);
         } catch (JSONException ex) {
             Log.d(LOG_TAG, "Should never happen");
         }
     }
 
     /**
-     * Checks to see if it is possible to go back one page in history, then does so.
+     * Closes every open dialog, e.g. when the Cordova WebView navigates away.
      */
-    public void goBack() {
-        this.inAppWebView.goBack();
+    public void closeAllDialogs() {
+        for (BrowserSession session : sessions.values()) {
+            closeDialog(session);
+        }
+    }
+
+    private InAppBrowser getInAppBrowser(){
+        return this;
     }
 
     /**
-     * Can the web browser go back?
-     * @return boolean
+     * Display a new browser with the specified URL.
+     *
+     * @param session       The session the browser is opened for, with its options.
+     * @param url           The url to load.
      */
-    public boolean canGoBack() {
-        return this.inAppWebView.canGoBack();
+    public String showWebPage(final BrowserSession session, final String url) {
+        final BrowserOptions options = session.options;
+        if (options.batchEvents) {
+            session.eventBatcher = new EventBatcher(new EventBatcher.Delivery() {
+                public void deliver(JSONArray events) {
+                    session.sendPluginResult(new PluginResult(PluginResult.Status.OK, events), true);
+                }
+            }, getIntPreference(EVENT_BATCH_WINDOW_PREFERENCE, DEFAULT_EVENT_BATCH_WINDOW), options.collapseRedirects);
+        }
+
+        // Requests can only be answered with headers from Lollipop on, which fonts need for CORS
+        final boolean useResourceCache = options.useResourceCache && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+
+        // Do the blocking work (assets, file system and cookies) off the UI thread first
+        this.cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                preloadAssets();
+                getDatabasePath();
+                if (options.clearAllCache) {
+                    CookieManager.getInstance().removeAllCookie();
+                } else if (options.clearSessionCache) {
+                    CookieManager.getInstance().removeSessionCookie();
+                }
+                final ResourceCache resourceCache = useResourceCache ? getResourceCache() : null;
+                cordova.getActivity().runOnUiThread(new Runnable() {
+                    public void run() {
+                        attachWindow(session, url, resourceCache);
+                    }
+                });
+            }
+        });
+        return "";
     }
 
     /**
-     * Has the user set the hardware back button to go back
-     * @return boolean
+     * Attach the views of a window and start loading. Must be called on the UI thread.
+     *
+     * @param session         The session the window is for, with its options. Nothing is
+     *                        done if it has been closed in the meantime.
+     * @param url             The url the browser was opened with.
+     * @param resourceCache   Where to keep the page resources, or null to leave them to the WebView.
      */
-    public boolean hardwareBack() {
-        return hadwareBackButton;
+    @SuppressLint("NewApi")
+    private void attachWindow(BrowserSession session, String url, ResourceCache resourceCache) {
+        if (session.isClosed()) {
+            return;
+        }
+
+        // Adopt the page if it has been prerendered, or reuse a warm window when there is one
+        PrerenderCache.Page prerendered = prerenderCache != null ? prerenderCache.take(url) : null;
+        InAppBrowserWindow window;
+        boolean needsChrome;
+        if (prerendered != null) {
+            window = prerendered.window;
+            needsChrome = true;
+            session.windowReady(NavigationTimeline.WINDOW_PRERENDERED);
+        } else {
+            window = webViewPool != null ? webViewPool.acquire() : null;
+            needsChrome = window == null;
+            if (needsChrome) {
+                window = createWebView();
+            }
+            session.windowReady(needsChrome ? NavigationTimeline.WINDOW_CREATED : NavigationTimeline.WINDOW_POOLED);
+        }
+        window.session = session;
+        session.window = window;
+        if (backgrounded) {
+            window.setBackgrounded(true);
+        }
+
+        RedirectState redirectState;
+        if (session.options.meliuzRedirectInterface) {
+            redirectState = RedirectState.AWAITING_STORE_INFO;
+        } else {
+            redirectState = RedirectState.NONE;
+        }
+
+        WebView inAppWebView = window.webView;
+        inAppWebView.setWebChromeClient(new InAppChromeClient(this.webView, session));
+        InAppBrowserClient client = new InAppBrowserClient(this.webView, session, redirectState, resourceCache);
+        if (resourceCache != null) {
+            client.acceptThirdPartyCookies = CookieManager.getInstance().acceptThirdPartyCookies(inAppWebView);
+        }
+        inAppWebView.setWebViewClient(client);
+        inAppWebView.getSettings().setBuiltInZoomControls(session.options.showZoomControls);
+        updateDataSaver(session, url);
+
+        // Start the network as early as possible, the toolbars are built while it loads.
+        // The client callbacks only run after this method returns.
+        // A redirect to resolve is not loaded until it has answered, see resolveRedirect().
+        if (prerendered == null) {
+            if (session.options.meliuzRedirectPrefetch) {
+                resolveRedirect(client, url);
+            } else {
+                inAppWebView.loadUrl(url);
+            }
+        }
+
+        if (needsChrome) {
+            createChrome(window);
+        }
+
+        if (session.options.meliuzRedirectInterface) {
+            window.titleView.setText("CARREGANDO...");
+        } else {
+            window.titleView.setText("");
+        }
+
+        inAppWebView.requestFocus();
+        inAppWebView.requestFocusFromTouch();
+
+        InAppBrowserDialog dialog = window.dialog;
+        WindowManager.LayoutParams lp = new WindowManager.LayoutParams();
+        lp.copyFrom(dialog.getWindow().getAttributes());
+        lp.width = WindowManager.LayoutParams.MATCH_PARENT;
+        lp.height = WindowManager.LayoutParams.MATCH_PARENT;
+
+        dialog.show();
+        dialog.getWindow().setAttributes(lp);
+        // the goal of openhidden is to load the url and not display it
+        // Show() needs to be called to cause the URL to be loaded
+        if (session.options.hidden) {
+            window.setHidden(true);
+        }
+        updateHostSuspended();
+
+        if (prerendered != null) {
+            // The page started, and maybe finished, loading before there was a client to tell
+            String currentUrl = inAppWebView.getUrl();
+            if (currentUrl == null) {
+                currentUrl = url;
+            }
+            client.onPageStarted(inAppWebView, currentUrl, null);
+            if (prerendered.finished) {
+                client.onPageFinished(inAppWebView, currentUrl);
+            }
+        }
     }
 
     /**
-     * Checks to see if it is possible to go forward one page in history, then does so.
+     * Resolve the redirect with a request of its own, then load what it
+     * answered with. The WebView never requests the redirect again once it has
+     * answered, since each request counts as a click: it goes straight to the
+     * store, to the next hop, or renders the page that was received. The
+     * redirect URL itself is only loaded when the request got no answer within
+     * the timeout of the RedirectResolver.
+     *
+     * @param client        The client of the window to load the redirect in.
+     * @param url           The redirect URL.
      */
-    private void goForward() {
-        this.inAppWebView.goForward();
+    private void resolveRedirect(final InAppBrowserClient client, final String url) {
+        cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                final RedirectResolver.Result result = RedirectResolver.resolve(url, getUserAgent());
+                cordova.getActivity().runOnUiThread(new Runnable() {
+                    public void run() {
+                        InAppBrowserWindow window = client.window;
+                        // The window may have been closed meanwhile
+                        if (window.session != client.session) {
+                            return;
+                        }
+                        if (result == null) {
+                            window.webView.loadUrl(url);
+                        } else if (result.body != null) {
+                            window.webView.loadDataWithBaseURL(url, result.body, result.mimeType, result.encoding, url);
+                        } else {
+                            RedirectResolver.StoreInfo storeInfo = result.storeInfo;
+                            if (storeInfo != null) {
+                                client.redirectState = RedirectState.STORE_INFO_SHOWN;
+                                window.setStoreInfo(storeInfo.title, storeInfo.cashback, storeInfo.couponCode, storeInfo.mobileFriendly);
+                                updateDataSaver(client.session, result.url);
+                            }
+                            window.webView.loadUrl(result.url);
+                        }
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Navigate to the new page
+     * The resource cache shared by the windows opened with resourcecache=yes.
+     * Created and loaded on first use, so it must not be called on the UI thread.
      *
-     * @param url to load
+     * @return              The resource cache.
      */
-    private void navigate(String url) {
-        InputMethodManager imm = (InputMethodManager)this.cordova.getActivity().getSystemService(Context.INPUT_METHOD_SERVICE);
-
-        if (!url.startsWith("http") && !url.startsWith("file:")) {
-            this.inAppWebView.loadUrl("http://" + url);
-        } else {
-            this.inAppWebView.loadUrl(url);
+    private synchronized ResourceCache getResourceCache() {
+        if (resourceCache == null) {
+            int sizeMegabytes = Math.max(1, getIntPreference(RESOURCE_CACHE_SIZE_PREFERENCE, DEFAULT_RESOURCE_CACHE_SIZE));
+            File directory = new File(cordova.getActivity().getCacheDir(), ResourceCache.DIRECTORY);
+            resourceCache = new ResourceCache(directory, sizeMegabytes * 1024L * 1024L, cordova.getThreadPool());
         }
-        this.inAppWebView.requestFocus();
+        resourceCache.load();
+        return resourceCache;
     }
 
-
     /**
-     * Should we show the zoom controls?
+     * The user agent the InAppBrowser WebViews send, for requests made outside of them.
      *
-     * @return boolean
+     * @return              The default WebView user agent.
      */
-    private boolean getShowZoomControls() {
-        return this.showZoomControls;
+    @SuppressLint("NewApi")
+    private String getUserAgent() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return WebSettings.getDefaultUserAgent(cordova.getActivity());
+        }
+        return System.getProperty("http.agent");
     }
 
-    private InAppBrowser getInAppBrowser(){
-        return this;
+    /**
+     * Decode the toolbar icons and fonts into the AssetCache, so that building
+     * the toolbars on the UI thread does not touch the disk. Safe to call from
+     * any thread, it only decodes the first time.
+     */
+    private void preloadAssets() {
+        Context context = cordova.getActivity();
+        AssetCache.getDrawable(context, CLOSE_ICON, "ic_action_remove");
+        AssetCache.getDrawable(context, COUPON_ICON, "ic_action_remove");
+        AssetCache.getDrawable(context, BACK_ICON, "ic_action_previous_item");
+        AssetCache.getDrawable(context, FORWARD_ICON, "ic_action_next_item");
+        AssetCache.getTypeface(context, TOOLBAR_FONT);
     }
 
     /**
-     * Display a new browser with the specified URL.
+     * Where the InAppBrowser WebViews keep their databases. Looked up once,
+     * as getDir() hits the file system.
      *
-     * @param url           The url to load.
-     * @param jsonObject
+     * @return              The database directory, or null if storage is disabled.
      */
-    public String showWebPage(final String url, HashMap<String, Boolean> features) {
-        showZoomControls = true;
-        openWindowHidden = false;
-        meliuzRedirectInterface = false;
-        if (features != null) {
-            Boolean zoom = features.get(ZOOM);
-            if (zoom != null) {
-                showZoomControls = zoom.booleanValue();
-            }
-            Boolean hidden = features.get(HIDDEN);
-            if (hidden != null) {
-                openWindowHidden = hidden.booleanValue();
-            }
-            Boolean hardwareBack = features.get(HARDWARE_BACK_BUTTON);
-            if (hardwareBack != null) {
-                hadwareBackButton = hardwareBack.booleanValue();
-            }
-            Boolean cache = features.get(CLEAR_ALL_CACHE);
-            if (cache != null) {
-                clearAllCache = cache.booleanValue();
+    private String getDatabasePath() {
+        if (databasePath == null) {
+            // Toggle whether this is enabled or not!
+            Bundle appSettings = cordova.getActivity().getIntent().getExtras();
+            boolean enableDatabase = appSettings == null ? true : appSettings.getBoolean("InAppBrowserStorageEnabled", true);
+            if (enableDatabase) {
+                databasePath = cordova.getActivity().getApplicationContext().getDir("inAppBrowserDB", Context.MODE_PRIVATE).getPath();
             } else {
-                cache = features.get(CLEAR_SESSION_CACHE);
-                if (cache != null) {
-                    clearSessionCache = cache.booleanValue();
-                }
-            }
-            Boolean redirectInterface = features.get(REDIRECT_INTERFACE);
-            if (redirectInterface != null) {
-                meliuzRedirectInterface = redirectInterface.booleanValue();
+                databasePath = "";
             }
         }
+        return databasePath.length() > 0 ? databasePath : null;
+    }
 
-        final CordovaWebView thatWebView = this.webView;
-        final boolean meliuzRedirectInterface = this.meliuzRedirectInterface;
+    /**
+     * Set a toolbar button icon from the app assets, falling back to the plugin drawable.
+     *
+     * @param button            The button to decorate.
+     * @param assetPath         Path of the icon in the app assets.
+     * @param fallbackResName   Name of the drawable resource shipped with the plugin.
+     */
+    @SuppressLint("NewApi")
+    private void setButtonIcon(Button button, String assetPath, String fallbackResName) {
+        Drawable icon = AssetCache.getDrawable(cordova.getActivity(), assetPath, fallbackResName);
+        if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.JELLY_BEAN) {
+            button.setBackgroundDrawable(icon);
+        } else {
+            button.setBackground(icon);
+        }
+    }
 
-        // Create dialog in new thread
-        Runnable runnable = new Runnable() {
-            /**
-             * Convert our DIP units to Pixels
-             *
-             * @return int
-             */
-            private int dpToPixels(int dipValue) {
-                int value = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
-                                                            (float) dipValue,
-                                                            cordova.getActivity().getResources().getDisplayMetrics()
-                );
+    /**
+     * Build a browser window: the dialog, both toolbars and a configured WebView.
+     * Nothing here depends on the features of a particular open, so the result
+     * can be kept in the WebViewPool. Must be called on the UI thread.
+     *
+     * @return              A window that is ready to load a URL.
+     */
+    private InAppBrowserWindow createWindow() {
+        InAppBrowserWindow window = createWebView();
+        createChrome(window);
+        return window;
+    }
 
-                return value;
-            }
+    /**
+     * Build a configured WebView, without any toolbar yet.
+     * Must be called on the UI thread.
+     *
+     * @return              A window holding only the WebView.
+     */
+    private InAppBrowserWindow createWebView() {
+        WebView inAppWebView = new WebView(cordova.getActivity());
+        InAppBrowserWindow window = new InAppBrowserWindow(inAppWebView);
+        window.addJavascriptInterface(new AndroidJavaScriptInterface(window), "androidJSInterface");
+        window.addJavascriptInterface(scriptResults, ScriptResultChannel.INTERFACE_NAME);
+        WebSettings settings = inAppWebView.getSettings();
+        settings.setJavaScriptEnabled(true);
+        settings.setJavaScriptCanOpenWindowsAutomatically(true);
+        settings.setPluginState(android.webkit.WebSettings.PluginState.ON);
+
+        String storagePath = getDatabasePath();
+        if (storagePath != null) {
+            settings.setDatabasePath(storagePath);
+            settings.setDatabaseEnabled(true);
+        }
+        settings.setDomStorageEnabled(true);
+        settings.setLoadWithOverviewMode(true);
+        settings.setUseWideViewPort(true);
+        inAppWebView.setId(6);
+        return window;
+    }
 
-            @SuppressLint("NewApi")
-            public void run() {
-                // Let's create the main dialog
-                dialog = new InAppBrowserDialog(cordova.getActivity(), android.R.style.Theme_NoTitleBar);
-                dialog.getWindow().getAttributes().windowAnimations = android.R.style.Animation_Dialog;
-                dialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
-                dialog.setCancelable(true);
-                dialog.setInAppBroswer(getInAppBrowser());
-
-                // Main container layout
-                LinearLayout main = new LinearLayout(cordova.getActivity());
-                main.setOrientation(LinearLayout.VERTICAL);
-
-                // Main activity resources
-                Resources activityRes = cordova.getActivity().getResources();
-
-                /**
-                 *
-                 * ================= TOP TOOLBAR =================
-                 *
-                 **/
-                LinearLayout topToolbar = new LinearLayout(cordova.getActivity());
-                topToolbar.setOrientation(LinearLayout.HORIZONTAL);
-                topToolbar.setBackgroundColor(android.graphics.Color.WHITE);
-                topToolbar.setLayoutParams(new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, this.dpToPixels(TOOLBAR_HEIGHT)));
-                topToolbar.setPadding(this.dpToPixels(TOOLBAR_PADDING), this.dpToPixels(TOOLBAR_PADDING), this.dpToPixels(TOOLBAR_PADDING), this.dpToPixels(TOOLBAR_PADDING));
-                topToolbar.setHorizontalGravity(Gravity.LEFT);
-                topToolbar.setVerticalGravity(Gravity.CENTER);
-
-                // Close/Done button
-                closeButton = new Button(cordova.getActivity());
-                LinearLayout.LayoutParams closeButtonLayoutParams = new LinearLayout.LayoutParams(this.dpToPixels(TOUCH_SIZE), this.dpToPixels(TOUCH_SIZE));
-                closeButton.setLayoutParams(closeButtonLayoutParams);
-                closeButton.setGravity(Gravity.LEFT);
-                closeButton.setContentDescription("Fechar");
-                closeButton.setId(50);
-                int closeButtonResId = activityRes.getIdentifier("ic_action_remove", "drawable", cordova.getActivity().getPackageName());
-                Drawable closeButtonIcon = activityRes.getDrawable(closeButtonResId);
-                try {
-                    // get input stream
-                    InputStream ims = cordova.getActivity().getAssets().open("www/assets/images/icon-close@3x.png");
-                    // load image as Drawable
-                    closeButtonIcon = Drawable.createFromStream(ims, null);
-                } catch (IOException e) {
-                    // ...
-                }
-                if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.JELLY_BEAN) {
-                    closeButton.setBackgroundDrawable(closeButtonIcon);
-                } else {
-                    closeButton.setBackground(closeButtonIcon);
+    /**
+     * Build the dialog and both toolbars around the WebView of a window, from
+     * the inappbrowser_window layout. Must be called on the UI thread.
+     *
+     * @param window        The window to complete.
+     */
+    private void createChrome(final InAppBrowserWindow window) {
+        Activity activity = cordova.getActivity();
+
+        // Let's create the main dialog
+        InAppBrowserDialog dialog = new InAppBrowserDialog(activity, android.R.style.Theme_NoTitleBar);
+        dialog.getWindow().getAttributes().windowAnimations = android.R.style.Animation_Dialog;
+        dialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
+        dialog.setCancelable(true);
+        dialog.setInAppBroswer(getInAppBrowser());
+        dialog.setWindow(window);
+
+        View main = activity.getLayoutInflater().inflate(getResourceId("inappbrowser_window", "layout"), null);
+
+        // Top toolbar
+        Button closeButton = (Button) main.findViewById(getResourceId("inappbrowser_close", "id"));
+        setButtonIcon(closeButton, CLOSE_ICON, "ic_action_remove");
+        closeButton.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                BrowserSession session = window.session;
+                if (session != null) {
+                    closeDialog(session);
                 }
-                closeButton.setOnClickListener(new View.OnClickListener() {
-                    public void onClick(View v) {
-                        closeDialog();
-                    }
-                });
+            }
+        });
 
-                // Title
-                titleView = new TextView(cordova.getActivity());
-                LinearLayout.LayoutParams titleViewLayoutParams = new LinearLayout.LayoutParams(this.dpToPixels(0), LayoutParams.MATCH_PARENT, 1);
-                titleView.setLayoutParams(titleViewLayoutParams);
-                titleView.setGravity(Gravity.CENTER);
-                titleView.setPadding(this.dpToPixels(TOOLBAR_PADDING), this.dpToPixels(0), this.dpToPixels(TOOLBAR_PADDING), this.dpToPixels(0));
-                if (meliuzRedirectInterface) {
-                    titleView.setText("CARREGANDO...");
-                } else {
-                    titleView.setText("");
-                }
-                titleView.setGravity(Gravity.CENTER);
-                titleView.setTextSize(19);
-                titleView.setTypeface(Typeface.createFromAsset(cordova.getActivity().getApplicationContext().getAssets(), "www/assets/fonts/source-sans/SourceSansPro-Regular.ttf"));
-                titleView.setTextColor(android.graphics.Color.parseColor("#F13900"));
-                titleView.setContentDescription("");
-                titleView.setId(51);
-
-                // Coupon code button
-                couponCodeButton = new Button(cordova.getActivity());
-                LinearLayout.LayoutParams couponCodeButtonLayoutParams = new LinearLayout.LayoutParams(this.dpToPixels(TOUCH_SIZE), this.dpToPixels(TOUCH_SIZE));
-                couponCodeButton.setLayoutParams(couponCodeButtonLayoutParams);
-                couponCodeButton.setGravity(Gravity.RIGHT);
-                couponCodeButton.setContentDescription("");
-                couponCodeButton.setId(52);
-                int couponCodeButtonResId = activityRes.getIdentifier("ic_action_remove", "drawable", cordova.getActivity().getPackageName());
-                Drawable couponCodeButtonIcon = activityRes.getDrawable(couponCodeButtonResId);
-                try {
-                    // get input stream
-                    InputStream ims = cordova.getActivity().getAssets().open("www/assets/images/icon-code@3x.png");
-                    // load image as Drawable
-                    couponCodeButtonIcon = Drawable.createFromStream(ims, null);
-                } catch (IOException e) {
-                    // ...
-                }
-                if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.JELLY_BEAN) {
-                    couponCodeButton.setBackgroundDrawable(couponCodeButtonIcon);
-                } else {
-                    couponCodeButton.setBackground(couponCodeButtonIcon);
-                }
+        TextView titleView = (TextView) main.findViewById(getResourceId("inappbrowser_title", "id"));
+        titleView.setTypeface(AssetCache.getTypeface(activity, TOOLBAR_FONT));
+
+        ViewStub couponCodeStub = (ViewStub) main.findViewById(getResourceId("inappbrowser_coupon_stub", "id"));
+        couponCodeStub.setOnInflateListener(new ViewStub.OnInflateListener() {
+            public void onInflate(ViewStub stub, View inflated) {
+                Button couponCodeButton = (Button) inflated;
+                setButtonIcon(couponCodeButton, COUPON_ICON, "ic_action_remove");
                 couponCodeButton.setOnClickListener(new View.OnClickListener() {
                     public void onClick(View v) {
-                        couponCodeDialog();
+                        couponCodeDialog(window);
                     }
                 });
-                couponCodeButton.setEnabled(false);
-                couponCodeButton.setAlpha(0.0f);
-
-                // Add the views to our topToolbar
-                topToolbar.addView(closeButton);
-                topToolbar.addView(titleView);
-                topToolbar.addView(couponCodeButton);
-
-                /**
-                 *
-                 * ================= BOTTOM TOOLBAR =================
-                 *
-                 **/
-                LinearLayout bottomToolbar = new LinearLayout(cordova.getActivity());
-                bottomToolbar.setOrientation(LinearLayout.HORIZONTAL);
-                bottomToolbar.setBackgroundColor(android.graphics.Color.WHITE);
-                bottomToolbar.setLayoutParams(new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, this.dpToPixels(TOOLBAR_HEIGHT)));
-                bottomToolbar.setPadding(this.dpToPixels(TOOLBAR_PADDING), this.dpToPixels(TOOLBAR_PADDING), this.dpToPixels(TOOLBAR_PADDING), this.dpToPixels(TOOLBAR_PADDING));
-                bottomToolbar.setHorizontalGravity(Gravity.LEFT);
-                bottomToolbar.setVerticalGravity(Gravity.CENTER);
-
-                // Action Button Container layout
-                RelativeLayout actionButtonContainer = new RelativeLayout(cordova.getActivity());
-                RelativeLayout.LayoutParams actionButtonContainerLayoutParams = new RelativeLayout.LayoutParams(this.dpToPixels(2 * TOUCH_SIZE), LayoutParams.MATCH_PARENT);
-                actionButtonContainerLayoutParams.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
-                actionButtonContainer.setLayoutParams(actionButtonContainerLayoutParams);
-                actionButtonContainer.setGravity(Gravity.RIGHT);
-                actionButtonContainer.setId(1);
-
-                // Back button
-                backButton = new Button(cordova.getActivity());
-                RelativeLayout.LayoutParams backButtonLayoutParams = new RelativeLayout.LayoutParams(this.dpToPixels(TOUCH_SIZE), LayoutParams.MATCH_PARENT);
-                backButtonLayoutParams.addRule(RelativeLayout.ALIGN_RIGHT);
-                backButton.setLayoutParams(backButtonLayoutParams);
-                backButton.setContentDescription("Voltar");
-                backButton.setId(2);
-                int backButtonResId = activityRes.getIdentifier("ic_action_previous_item", "drawable", cordova.getActivity().getPackageName());
-                Drawable backButtonIcon = activityRes.getDrawable(backButtonResId);
-                try {
-                    // get input stream
-                    InputStream ims = cordova.getActivity().getAssets().open("www/assets/images/icon-back@3x.png");
-                    // load image as Drawable
-                    backButtonIcon = Drawable.createFromStream(ims, null);
-                } catch (IOException e) {
-                    // ...
-                }
-                if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.JELLY_BEAN) {
-                    backButton.setBackgroundDrawable(backButtonIcon);
-                } else {
-                    backButton.setBackground(backButtonIcon);
-                }
+                window.couponCodeButton = couponCodeButton;
+            }
+        });
+
+        // Bottom toolbar
+        ViewStub bottomToolbarStub = (ViewStub) main.findViewById(getResourceId("inappbrowser_bottom_toolbar_stub", "id"));
+        bottomToolbarStub.setOnInflateListener(new ViewStub.OnInflateListener() {
+            public void onInflate(ViewStub stub, View inflated) {
+                TextView cashbackView = (TextView) inflated.findViewById(getResourceId("inappbrowser_cashback", "id"));
+                cashbackView.setTypeface(AssetCache.getTypeface(cordova.getActivity(), TOOLBAR_FONT));
+
+                Button backButton = (Button) inflated.findViewById(getResourceId("inappbrowser_back", "id"));
+                setButtonIcon(backButton, BACK_ICON, "ic_action_previous_item");
                 backButton.setOnClickListener(new View.OnClickListener() {
                     public void onClick(View v) {
-                        goBack();
+                        if (window.canGoBack()) {
+                            window.webView.goBack();
+                        }
                     }
                 });
-                backButton.setEnabled(false);
-                backButton.setAlpha(0.3f);
-
-                // Forward button
-                forwardButton = new Button(cordova.getActivity());
-                RelativeLayout.LayoutParams forwardButtonLayoutParams = new RelativeLayout.LayoutParams(this.dpToPixels(TOUCH_SIZE), LayoutParams.MATCH_PARENT);
-                forwardButtonLayoutParams.addRule(RelativeLayout.RIGHT_OF, backButton.getId());
-                forwardButton.setLayoutParams(forwardButtonLayoutParams);
-                forwardButton.setContentDescription("Avançar");
-                forwardButton.setId(3);
-                int forwardButtonResId = activityRes.getIdentifier("ic_action_next_item", "drawable", cordova.getActivity().getPackageName());
-                Drawable forwardButtonIcon = activityRes.getDrawable(forwardButtonResId);
-                try {
-                    // get input stream
-                    InputStream ims = cordova.getActivity().getAssets().open("www/assets/images/icon-forward@3x.png");
-                    // load image as Drawable
-                    forwardButtonIcon = Drawable.createFromStream(ims, null);
-                } catch (IOException e) {
-                    // ...
-                }
-                if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.JELLY_BEAN) {
-                    forwardButton.setBackgroundDrawable(forwardButtonIcon);
-                } else {
-                    forwardButton.setBackground(forwardButtonIcon);
-                }
+
+                Button forwardButton = (Button) inflated.findViewById(getResourceId("inappbrowser_forward", "id"));
+                setButtonIcon(forwardButton, FORWARD_ICON, "ic_action_next_item");
                 forwardButton.setOnClickListener(new View.OnClickListener() {
                     public void onClick(View v) {
-                        goForward();
+                        window.webView.goForward();
                     }
                 });
-                forwardButton.setEnabled(false);
-                forwardButton.setAlpha(0.3f);
-
-                // CashbackView
-                cashbackView = new TextView(cordova.getActivity());
-                LinearLayout.LayoutParams cashbackViewLayoutParams = new LinearLayout.LayoutParams(this.dpToPixels(0), LayoutParams.MATCH_PARENT, 1);
-                cashbackView.setLayoutParams(cashbackViewLayoutParams);
-                cashbackView.setPadding(this.dpToPixels(TOOLBAR_PADDING), this.dpToPixels(0), this.dpToPixels(TOOLBAR_PADDING), this.dpToPixels(0));
-                cashbackView.setText("");
-                cashbackView.setGravity(Gravity.LEFT | Gravity.CENTER);
-                cashbackView.setTextSize(19);
-                cashbackView.setTypeface(Typeface.createFromAsset(cordova.getActivity().getApplicationContext().getAssets(), "www/assets/fonts/source-sans/SourceSansPro-Regular.ttf"));
-                cashbackView.setTextColor(android.graphics.Color.parseColor("#FF4D4D"));
-                cashbackView.setContentDescription("");
-                cashbackView.setId(99);
-
-                // LoadingProgressBar
-                loadingProgressBar = new ProgressBar(cordova.getActivity(), null, android.R.attr.progressBarStyleSmall);
-                RelativeLayout.LayoutParams loadingProgressBarLayoutParams = new RelativeLayout.LayoutParams(this.dpToPixels(TOUCH_SIZE) / 2, this.dpToPixels(TOUCH_SIZE) / 2);
-                loadingProgressBarLayoutParams.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
-                loadingProgressBar.setLayoutParams(loadingProgressBarLayoutParams);
-                loadingProgressBar.setIndeterminate(true);
-                loadingProgressBar.setId(999);
-
-                // Add the back and forward buttons to our action button container layout
-                actionButtonContainer.addView(forwardButton);
-                actionButtonContainer.addView(backButton);
-
-                // Add the views to our bottomToolbar
-                bottomToolbar.addView(cashbackView);
-                bottomToolbar.addView(loadingProgressBar);
-                bottomToolbar.addView(actionButtonContainer);
-
-                /**
-                 *
-                 * ================= WEBVIEW =================
-                 *
-                 **/
-                inAppWebView = new WebView(cordova.getActivity());
-                inAppWebView.addJavascriptInterface(new AndroidJavaScriptInterface(titleView, cashbackView, couponCodeButton), "androidJSInterface");
-                inAppWebView.setLayoutParams(new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, this.dpToPixels(0), 1));
-                inAppWebView.setWebChromeClient(new InAppChromeClient(thatWebView));
-                WebViewClient client = new InAppBrowserClient(thatWebView, meliuzRedirectInterface, loadingProgressBar);
-                inAppWebView.setWebViewClient(client);
-                WebSettings settings = inAppWebView.getSettings();
-                settings.setJavaScriptEnabled(true);
-                settings.setJavaScriptCanOpenWindowsAutomatically(true);
-                settings.setBuiltInZoomControls(getShowZoomControls());
-                settings.setPluginState(android.webkit.WebSettings.PluginState.ON);
-
-                // Toggle whether this is enabled or not!
-                Bundle appSettings = cordova.getActivity().getIntent().getExtras();
-                boolean enableDatabase = appSettings == null ? true : appSettings.getBoolean("InAppBrowserStorageEnabled", true);
-                if (enableDatabase) {
-                    String databasePath = cordova.getActivity().getApplicationContext().getDir("inAppBrowserDB", Context.MODE_PRIVATE).getPath();
-                    settings.setDatabasePath(databasePath);
-                    settings.setDatabaseEnabled(true);
-                }
-                settings.setDomStorageEnabled(true);
 
-                if (clearAllCache) {
-                    CookieManager.getInstance().removeAllCookie();
-                } else if (clearSessionCache) {
-                    CookieManager.getInstance().removeSessionCookie();
-                }
+                window.bottomToolbar = inflated;
+                window.cashbackView = cashbackView;
+                window.backButton = backButton;
+                window.forwardButton = forwardButton;
+            }
+        });
 
-                inAppWebView.loadUrl(url);
-                inAppWebView.setId(6);
-                inAppWebView.getSettings().setLoadWithOverviewMode(true);
-                inAppWebView.getSettings().setUseWideViewPort(true);
-                inAppWebView.requestFocus();
-                inAppWebView.requestFocusFromTouch();
-
-                // Add our topToolbar to our main view/layout
-                main.addView(topToolbar);
-                // Add our webview to our main view/layout
-                main.addView(inAppWebView);
-                // Add our bottomToolbar to our main view/layout
-                main.addView(bottomToolbar);
-
-                WindowManager.LayoutParams lp = new WindowManager.LayoutParams();
-                lp.copyFrom(dialog.getWindow().getAttributes());
-                lp.width = WindowManager.LayoutParams.MATCH_PARENT;
-                lp.height = WindowManager.LayoutParams.MATCH_PARENT;
-
-                dialog.setContentView(main);
-                dialog.show();
-                dialog.getWindow().setAttributes(lp);
-                // the goal of openhidden is to load the url and not display it
-                // Show() needs to be called to cause the URL to be loaded
-                if (openWindowHidden) {
-                    dialog.hide();
-                }
+        // Error page
+        ViewStub errorStub = (ViewStub) main.findViewById(getResourceId("inappbrowser_error_stub", "id"));
+        errorStub.setOnInflateListener(new ViewStub.OnInflateListener() {
+            public void onInflate(ViewStub stub, View inflated) {
+                Button retryButton = (Button) inflated.findViewById(getResourceId("inappbrowser_error_retry", "id"));
+                retryButton.setOnClickListener(new View.OnClickListener() {
+                    public void onClick(View v) {
+                        retryLoad(window);
+                    }
+                });
+
+                Button closeButton = (Button) inflated.findViewById(getResourceId("inappbrowser_error_close", "id"));
+                closeButton.setOnClickListener(new View.OnClickListener() {
+                    public void onClick(View v) {
+                        BrowserSession session = window.session;
+                        if (session != null) {
+                            closeDialog(session);
+                        }
+                    }
+                });
+
+                window.errorView = inflated;
+                window.errorStatusView = (TextView) inflated.findViewById(getResourceId("inappbrowser_error_status", "id"));
             }
-        };
-        this.cordova.getActivity().runOnUiThread(runnable);
-        return "";
+        });
+
+        // WebView, below the error page
+        ViewGroup webViewContainer = (ViewGroup) main.findViewById(getResourceId("inappbrowser_webview_container", "id"));
+        webViewContainer.addView(window.webView, 0, new FrameLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+
+        dialog.setContentView(main);
+
+        window.dialog = dialog;
+        window.titleView = titleView;
+        window.loadingProgressBar = (ProgressBar) main.findViewById(getResourceId("inappbrowser_progress", "id"));
+        window.closeButton = closeButton;
+        window.couponCodeStub = couponCodeStub;
+        window.bottomToolbarStub = bottomToolbarStub;
+        window.errorStub = errorStub;
     }
 
     /**
-     * Create a new plugin success result and send it back to JavaScript
+     * Load the page that failed to load again, now. Does nothing once the
+     * error page is gone. Must be called on the UI thread.
      *
-     * @param obj a JSONObject contain event payload information
+     * @param window        The window showing the error page.
      */
-    private void sendUpdate(JSONObject obj, boolean keepCallback) {
-        sendUpdate(obj, keepCallback, PluginResult.Status.OK);
+    private void retryLoad(InAppBrowserWindow window) {
+        String url = window.loadFailures.getUrl();
+        if (url == null || window.session == null) {
+            return;
+        }
+        window.cancelRetry();
+        window.showError(ERROR_RETRYING);
+        window.webView.loadUrl(url);
     }
 
     /**
-     * Create a new plugin result and send it back to JavaScript
+     * Look up a resource shipped with the plugin. The plugin can not use the
+     * app R class, so ids are resolved by name once and remembered.
      *
-     * @param obj a JSONObject contain event payload information
-     * @param status the status code to return to the JavaScript environment
+     * @param name          The resource name.
+     * @param type          The resource type, e.g. "id" or "layout".
+     * @return              The resource id, or 0 if it does not exist.
      */
-    private void sendUpdate(JSONObject obj, boolean keepCallback, PluginResult.Status status) {
-        if (callbackContext != null) {
-            PluginResult result = new PluginResult(status, obj);
-            result.setKeepCallback(keepCallback);
-            callbackContext.sendPluginResult(result);
-            if (!keepCallback) {
-                callbackContext = null;
-            }
+    private int getResourceId(String name, String type) {
+        String key = type + "/" + name;
+        Integer id = resourceIds.get(key);
+        if (id == null) {
+            Activity activity = cordova.getActivity();
+            id = activity.getResources().getIdentifier(name, type, activity.getPackageName());
+            resourceIds.put(key, id);
         }
+        return id.intValue();
     }
 
     /* An instance of this class will be registered as a JavaScript interface */
     public class AndroidJavaScriptInterface {
-        private TextView titleView;
-        private TextView cashbackView;
-        private Button couponCodeButton;
+        private InAppBrowserWindow window;
 
         /**
          * Constructor.
          *
-         * @param TextView title
+         * @param window    The window whose toolbars are updated. Its views may be
+         *                  built after the interface is registered.
          */
-        public AndroidJavaScriptInterface(TextView titleView, TextView cashbackView, Button couponCodeButton) {
-            this.titleView = titleView;
-            this.cashbackView = cashbackView;
-            this.couponCodeButton = couponCodeButton;
+        public AndroidJavaScriptInterface(InAppBrowserWindow window) {
+            this.window = window;
         }
 
         @JavascriptInterface
         public void updateInterface(final String titleString, final String cashbackString, final String couponCodeString, final String mobileFriendlyString) {
-            final TextView titleView = this.titleView;
-            final TextView cashbackView = this.cashbackView;
-            final Button couponCodeButton = this.couponCodeButton;
+            final InAppBrowserWindow window = this.window;
 
             // when updating UI, needs to run on UI Thread
             // http://stackoverflow.com/a/17230947/165233
             cordova.getActivity().runOnUiThread(new Runnable() {
                 public void run() {
-                    titleView.setText(titleString.toUpperCase());
-                    titleView.setContentDescription(titleString);
-
-                    cashbackView.setText(cashbackString);
-                    cashbackView.setContentDescription(cashbackString);
-                    if (mobileFriendlyString.equals("false")) {
-                        cashbackView.setTextColor(android.graphics.Color.parseColor("#999999"));
-                        cashbackView.setPaintFlags(cashbackView.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
-                    }
-
-                    if (!couponCodeString.equals("")) {
-                        couponCodeButton.setEnabled(true);
-                        couponCodeButton.setAlpha(1.0f);
-                        couponCodeButton.setContentDescription(couponCodeString);
-                    }
+                    window.setStoreInfo(titleString, cashbackString, couponCodeString, !"false".equals(mobileFriendlyString));
                 }
             });
         }
 
         @JavascriptInterface
         public void updateTitle(final String titleString) {
-            final TextView titleView = this.titleView;
+            final InAppBrowserWindow window = this.window;
 
             // when updating UI, needs to run on UI Thread
             // http://stackoverflow.com/a/17230947/165233
             cordova.getActivity().runOnUiThread(new Runnable() {
                 public void run() {
-                    titleView.setText(titleString.toUpperCase());
-                    titleView.setContentDescription(titleString);
+                    window.setTitle(titleString);
                 }
             });
         }
     }
 
+    // Read by the toolbar in a single evaluation, see InAppBrowserClient.readStoreInfo()
+    private static final String STORE_INFO_SCRIPT = "(function(m) { return [m.storeTitle, m.cashbackString, m.couponCode, m.mobileFriendly, document.title]; })(window.meliuz || {})";
+    private static final String TITLE_SCRIPT = "document.title";
+    // Fallbacks for WebViews that can not return script results
+    private static final String LEGACY_STORE_INFO_SCRIPT = "window.androidJSInterface.updateInterface(window.meliuz.storeTitle, window.meliuz.cashbackString, window.meliuz.couponCode, window.meliuz.mobileFriendly);";
+    private static final String LEGACY_TITLE_SCRIPT = "window.androidJSInterface.updateTitle(window.document.title);";
+
+    /**
+     * Where a window stands in the Méliuz redirect flow.
+     */
+    enum RedirectState {
+        /** Not a redirect, the title follows each page. */
+        NONE,
+        /** The redirect page is loading, its store metadata is read once it has finished. */
+        AWAITING_STORE_INFO,
+        /** The store metadata is shown, later pages leave the toolbar alone. */
+        STORE_INFO_SHOWN
+    }
+
     /**
      * The webview client receives notifications about appView
      */
     public class InAppBrowserClient extends WebViewClient {
         CordovaWebView webView;
-        boolean checkedVars;
-        boolean meliuzRedirectInterface;
-        ProgressBar loadingProgressBar;
+        BrowserSession session;
+        RedirectState redirectState;
+        InAppBrowserWindow window;
+        ResourceCache resourceCache;
+        // Set by the main frame request, for telling third party resources apart
+        volatile String pageHost;
+        // Read on the UI thread when the window is attached, for the resource cache
+        boolean acceptThirdPartyCookies;
+        RetryPolicy retryPolicy;
+        // Whether the page loading now has failed
+        private boolean loadFailed = false;
+        // Counts the pages started, so that a late script result is not taken for a later page
+        private int pagesStarted = 0;
+        // Whether the document start user scripts ran in the page loading now
+        private boolean documentStartRan = false;
 
         /**
          * Constructor.
          *
-         * @param mContext
+         * @param webView           The Cordova WebView.
+         * @param session           The session this client loads pages for, its window attached.
+         * @param redirectState     Where the window starts in the redirect flow.
+         * @param resourceCache     Where to keep the page resources, or null.
          */
-        public InAppBrowserClient(CordovaWebView webView, boolean meliuzRedirectInterface, ProgressBar loadingProgressBar) {
+        public InAppBrowserClient(CordovaWebView webView, BrowserSession session, RedirectState redirectState, ResourceCache resourceCache) {
             this.webView = webView;
-            this.checkedVars = false;
-            this.meliuzRedirectInterface = meliuzRedirectInterface;
-            this.loadingProgressBar = loadingProgressBar;
+            this.session = session;
+            this.redirectState = redirectState;
+            this.window = session.window;
+            this.resourceCache = resourceCache;
+            this.retryPolicy = new RetryPolicy(session.options.loadAttempts, session.options.retryDelay);
         }
 
         /**
-         * Notify the host application that a page has started loading.
+         * Drop the resources the content blocker matches and the fonts and media
+         * while saving data, and serve the static resources of the page from the
+         * resource cache, when enabled. Called on a WebView network thread.
          *
          * @param view          The webview initiating the callback.
-         * @param url           The url of the page.
+         * @param request       The resource request.
          */
+        @TargetApi(Build.VERSION_CODES.LOLLIPOP)
         @Override
-        public void onPageStarted(WebView view, String url,  Bitmap favicon) {
-            this.loadingProgressBar.setVisibility(ProgressBar.VISIBLE);
-
-            super.onPageStarted(view, url, favicon);
-            String newloc = "";
-            if (url.startsWith("http:") || url.startsWith("https:") || url.startsWith("file:")) {
-                newloc = url;
-            } else if (url.startsWith(WebView.SCHEME_TEL)) {
-                // If dialing phone (tel:5551212)
-                try {
-                    Intent intent = new Intent(Intent.ACTION_DIAL);
-                    intent.setData(Uri.parse(url));
-                    cordova.getActivity().startActivity(intent);
-                } catch (android.content.ActivityNotFoundException e) {
-                    LOG.e(LOG_TAG, "Error dialing " + url + ": " + e.toString());
+        public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+            NavigationTimeline timeline = session.navigation;
+            if (request.isForMainFrame()) {
+                pageHost = request.getUrl().getHost();
+            } else {
+                if (timeline != null) {
+                    timeline.resourceRequested();
                 }
-            } else if (url.startsWith("geo:") || url.startsWith(WebView.SCHEME_MAILTO) || url.startsWith("market:")) {
-                try {
-                    Intent intent = new Intent(Intent.ACTION_VIEW);
-                    intent.setData(Uri.parse(url));
-                    cordova.getActivity().startActivity(intent);
-                } catch (android.content.ActivityNotFoundException e) {
-                    LOG.e(LOG_TAG, "Error with " + url + ": " + e.toString());
+                ContentBlocker blocker = contentBlocker;
+                if (blocker != null && session.options.blockContent && blocker.shouldBlock(request.getUrl().toString(), pageHost)) {
+                    if (timeline != null) {
+                        timeline.resourceBlocked();
+                    }
+                    return emptyResponse();
                 }
-            } else if (url.startsWith("sms:")) {
-                // If sms:5551212?body=This is the message
-                try {
-                    Intent intent = new Intent(Intent.ACTION_VIEW);
-
-                    // Get address
-                    String address = null;
-                    int parmIndex = url.indexOf('?');
-                    if (parmIndex == -1) {
-                        address = url.substring(4);
-                    } else {
-                        address = url.substring(4, parmIndex);
-
-                        // If body, then set sms body
-                        Uri uri = Uri.parse(url);
-                        String query = uri.getQuery();
-                        if (query != null) {
-                            if (query.startsWith("body=")) {
-                                intent.putExtra("sms_body", query.substring(5));
-                            }
+                if (session.savingData && DataSaverPolicy.isDeferred(request.getUrl().getPath())) {
+                    return emptyResponse();
+                }
+                if (resourceCache != null) {
+                    WebResourceResponse response = resourceCache.intercept(request.getMethod(), request.getUrl().toString(),
+                            request.getRequestHeaders(), pageHost, acceptThirdPartyCookies);
+                    if (response != null) {
+                        if (timeline != null) {
+                            response.setData(timeline.countBytes(response.getData()));
                         }
+                        return response;
                     }
-                    intent.setData(Uri.parse("sms:" + address));
-                    intent.putExtra("address", address);
-                    intent.setType("vnd.android-dir/mms-sms");
-                    cordova.getActivity().startActivity(intent);
-                } catch (android.content.ActivityNotFoundException e) {
-                    LOG.e(LOG_TAG, "Error sending sms " + url + ":" + e.toString());
                 }
+            }
+            return super.shouldInterceptRequest(view, request);
+        }
+
+        /**
+         * Count the resources of the page on WebViews older than Lollipop, which
+         * only call this version. Called on a WebView network thread.
+         *
+         * @param view          The webview initiating the callback.
+         * @param url           The resource URL.
+         */
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+            NavigationTimeline timeline = session.navigation;
+            if (timeline != null && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                timeline.resourceRequested();
+            }
+            return super.shouldInterceptRequest(view, url);
+        }
+
+        /**
+         * Hand the links the WebView can not load to other apps, before a
+         * page load starts for them.
+         *
+         * @param view          The webview initiating the callback.
+         * @param url           The url about to be loaded.
+         * @return              True if the WebView must not load the url.
+         */
+        @Override
+        public boolean shouldOverrideUrlLoading(WebView view, String url) {
+            return schemeRouter.route(url, view);
+        }
+
+        /**
+         * Notify the host application that a page has started loading.
+         *
+         * @param view          The webview initiating the callback.
+         * @param url           The url of the page.
+         */
+        @Override
+        public void onPageStarted(WebView view, String url,  Bitmap favicon) {
+            this.window.setLoading(true);
+            this.loadFailed = false;
+
+            // A page starting before the previous one has finished is a redirect
+            NavigationTimeline timeline = session.navigation;
+            if (timeline != null && !timeline.isFinished()) {
+                timeline.redirected(url);
             } else {
-                newloc = "http://" + url;
+                timeline = session.startNavigation(url);
+            }
+            timeline.pageStarted();
+
+            // The domain may have a data saver mode of its own
+            updateDataSaver(session, url);
+
+            this.documentStartRan = false;
+            final int page = ++this.pagesStarted;
+            String documentStartScript = ScriptExecutor.canRunWhileLoading() ? session.userScripts.documentStartScript(url) : null;
+            if (documentStartScript != null) {
+                ScriptExecutor.evaluate(view, documentStartScript, new ScriptExecutor.ResultCallback() {
+                    public void onResult(String json) {
+                        if (page == pagesStarted && "true".equals(json)) {
+                            documentStartRan = true;
+                        }
+                    }
+                });
             }
 
+            super.onPageStarted(view, url, favicon);
+
             try {
                 JSONObject obj = new JSONObject();
                 obj.put("type", LOAD_START_EVENT);
-                obj.put("url", newloc);
+                obj.put("url", url);
 
-                sendUpdate(obj, true);
+                session.sendUpdate(obj, true, PluginResult.Status.OK);
             } catch (JSONException ex) {
                 Log.d(LOG_TAG, "Should never happen");
             }
         }
 
         public void onPageFinished(WebView view, String url) {
-            this.loadingProgressBar.setVisibility(ProgressBar.GONE);
+            this.window.setLoading(false);
 
-            if (inAppWebView.canGoBack()) {
-                backButton.setEnabled(true);
-                backButton.setAlpha(1.0f);
-            } else {
-                backButton.setEnabled(false);
-                backButton.setAlpha(0.3f);
-            }
-            if (inAppWebView.canGoForward()) {
-                forwardButton.setEnabled(true);
-                forwardButton.setAlpha(1.0f);
-            } else {
-                forwardButton.setEnabled(false);
-                forwardButton.setAlpha(0.3f);
+            this.window.pageFinished();
+
+            // A page loaded after the error page was shown, a retry or another one
+            if (!this.loadFailed && this.window.loadFailures.getUrl() != null) {
+                this.window.hideError();
+                updateConnectivityMonitor();
             }
 
             super.onPageFinished(view, url);
 
             try {
+                NavigationTimeline timeline = session.navigation;
                 JSONObject obj = new JSONObject();
                 obj.put("type", LOAD_STOP_EVENT);
                 obj.put("url", url);
+                if (session.options.blockContent && timeline != null) {
+                    obj.put("blocked", timeline.getBlocked());
+                }
 
-                sendUpdate(obj, true);
+                session.sendUpdate(obj, true, PluginResult.Status.OK);
+
+                if (timeline != null && timeline.pageFinished(url)) {
+                    navigationMetrics.add(timeline);
+                    session.sendUpdate(timeline.toEvent(), true, PluginResult.Status.OK);
+                }
             } catch (JSONException ex) {
                 Log.d(LOG_TAG, "Should never happen");
             }
 
-            if (!this.checkedVars && this.meliuzRedirectInterface) {
-                // set checkdVars, clear history, update interface and redirect user
-                this.checkedVars = true;
-                view.loadUrl("javascript: window.androidJSInterface.updateInterface(window.meliuz.storeTitle, window.meliuz.cashbackString, window.meliuz.couponCode, window.meliuz.mobileFriendly);");
-                view.clearHistory();
-            } else if (!this.meliuzRedirectInterface) {
-                view.loadUrl("javascript: window.androidJSInterface.updateTitle(window.document.title);");
+            // Document start scripts that did not find the new document when it started run now
+            for (String script : session.userScripts.documentEndScripts(url, !this.documentStartRan)) {
+                ScriptExecutor.execute(view, script);
+            }
+
+            switch (this.redirectState) {
+                case AWAITING_STORE_INFO:
+                    // clear history, update interface and let the page redirect the user
+                    this.redirectState = RedirectState.STORE_INFO_SHOWN;
+                    readStoreInfo(view);
+                    view.clearHistory();
+                    break;
+                case NONE:
+                    readTitle(view);
+                    break;
+                default:
+                    break;
             }
         }
 
+        /**
+         * Show the store metadata exposed by the Méliuz redirect page in window.meliuz.
+         */
+        private void readStoreInfo(WebView view) {
+            boolean evaluated = ScriptExecutor.evaluate(view, STORE_INFO_SCRIPT, new ScriptExecutor.ResultCallback() {
+                public void onResult(String json) {
+                    try {
+                        JSONArray values = new JSONArray(json);
+                        String title = optString(values, 0);
+                        if (title == null) {
+                            title = optString(values, 4);
+                        }
+                        window.setStoreInfo(title == null ? "" : title, optString(values, 1), optString(values, 2),
+                                !"false".equals(optString(values, 3)));
+                    } catch (JSONException e) {
+                        Log.d(LOG_TAG, "Unexpected store info: " + json);
+                    }
+                }
+            });
+            if (!evaluated) {
+                ScriptExecutor.execute(view, LEGACY_STORE_INFO_SCRIPT);
+            }
+        }
+
+        /**
+         * Show the page title in the toolbar.
+         */
+        private void readTitle(WebView view) {
+            boolean evaluated = ScriptExecutor.evaluate(view, TITLE_SCRIPT, new ScriptExecutor.ResultCallback() {
+                public void onResult(String json) {
+                    try {
+                        // Wrapped in an array, as a bare JSON string is not valid JSON text for the parser
+                        String title = optString(new JSONArray("[" + json + "]"), 0);
+                        window.setTitle(title == null ? "" : title);
+                    } catch (JSONException e) {
+                        Log.d(LOG_TAG, "Unexpected title: " + json);
+                    }
+                }
+            });
+            if (!evaluated) {
+                ScriptExecutor.execute(view, LEGACY_TITLE_SCRIPT);
+            }
+        }
+
+        /**
+         * @return the value at index as a string, or null if it is missing or null
+         */
+        private String optString(JSONArray values, int index) {
+            return values.isNull(index) ? null : values.optString(index);
+        }
+
+        /**
+         * Close the browser when its renderer is gone, which a hidden browser's
+         * renderer may be to free memory. Without this the app would be killed too.
+         *
+         * @param view          The webview whose renderer is gone.
+         * @param detail        Why it is gone.
+         * @return              True, the WebView is destroyed.
+         */
+        @TargetApi(Build.VERSION_CODES.O)
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            LOG.e(LOG_TAG, "Renderer gone " + (detail.didCrash() ? "after a crash" : "to free memory") + ", closing the browser");
+            window.rendererGone = true;
+            closeDialog(session);
+            return true;
+        }
+
         public void onReceivedError(WebView view, int errorCode, String description, final String failingUrl) {
-            this.loadingProgressBar.setVisibility(ProgressBar.GONE);
+            this.window.setLoading(false);
 
             super.onReceivedError(view, errorCode, description, failingUrl);
 
-            new AlertDialog.Builder(cordova.getActivity())
-                .setTitle("Deu ruim...")
-                .setMessage("Houve algum problema ao carregar esta página. O que você quer fazer?")
-                .setPositiveButton("Tentar denovo", new DialogInterface.OnClickListener() {
-                    public void onClick(DialogInterface dialog, int which) {
-                        inAppWebView.loadUrl(failingUrl);
-                    }
-                })
-                .setNegativeButton("Fechar", new DialogInterface.OnClickListener() {
-                    public void onClick(DialogInterface dialog, int which) {
-                        closeDialog();
+            this.loadFailed = true;
+            if (!failingUrl.equals(window.loadFailures.getUrl())) {
+                window.cancelRetry();
+            }
+
+            // Offline, the page is loaded again when the connection comes back,
+            // and the attempt does not count
+            connectivityMonitor.start();
+            boolean connected = connectivityMonitor.isConnected();
+            long retryIn = window.loadFailures.failed(failingUrl, errorCode, connected, retryPolicy);
+            int attempt = window.loadFailures.getLastAttempt();
+            if (!connected) {
+                window.showError(ERROR_OFFLINE);
+            } else if (retryIn >= 0) {
+                window.scheduleRetry(new Runnable() {
+                    public void run() {
+                        retryLoad(window);
                     }
-                })
-                .show();
+                }, retryIn);
+                window.showError(String.format(Locale.ENGLISH, ERROR_RETRY_IN, (retryIn + 999) / 1000));
+            } else {
+                window.showError(ERROR_GAVE_UP);
+            }
 
             try {
                 JSONObject obj = new JSONObject();
@@ -1076,8 +1895,10 @@ public class InAppBrowser extends CordovaPlugin {
                 obj.put("url", failingUrl);
                 obj.put("code", errorCode);
                 obj.put("message", description);
+                obj.put("attempt", attempt);
+                obj.put("retryIn", retryIn);
 
-                sendUpdate(obj, true, PluginResult.Status.ERROR);
+                session.sendUpdate(obj, true, PluginResult.Status.ERROR);
             } catch (JSONException ex) {
                 Log.d(LOG_TAG, "Should never happen");
             }
@@ -32,6 +32,7 @@ import org.json.JSONObject;
 public class InAppBrowserDialog extends Dialog {
     Context context;
     InAppBrowser inAppBrowser = null;
+    InAppBrowserWindow window = null;
 
     public InAppBrowserDialog(Context context, int theme) {
         super(context, theme);
@@ -42,16 +43,21 @@ public class InAppBrowserDialog extends Dialog {
         this.inAppBrowser = browser;
     }
 
+    void setWindow(InAppBrowserWindow window) {
+        this.window = window;
+    }
+
     public void onBackPressed () {
-        if (this.inAppBrowser == null) {
+        BrowserSession session = this.window == null ? null : this.window.session;
+        if (this.inAppBrowser == null || session == null) {
             this.dismiss();
         } else {
             // better to go through the in inAppBrowser
             // because it does a clean up
-            if (this.inAppBrowser.hardwareBack() && this.inAppBrowser.canGoBack()) {
-                this.inAppBrowser.goBack();
+            if (session.options.hardwareBackButton && this.window.canGoBack()) {
+                this.window.webView.goBack();
             }  else {
-                this.inAppBrowser.closeDialog();
+                this.inAppBrowser.closeDialog(session);
             }
         }
     }
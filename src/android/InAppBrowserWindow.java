@@ -0,0 +1,484 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.annotation.TargetApi;
+import android.graphics.Paint;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewStub;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebChromeClient;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import android.widget.Button;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import org.apache.cordova.LOG;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the views that make up one browser window: the WebView, the dialog
+ * shell and its toolbars.
+ *
+ * Windows are built by InAppBrowser and can be kept in a WebViewPool between
+ * opens, so everything here must be safe to reset and reuse.
+ */
+class InAppBrowserWindow {
+    static final int CASHBACK_COLOR = android.graphics.Color.parseColor("#FF4D4D");
+    static final int CASHBACK_DISABLED_COLOR = android.graphics.Color.parseColor("#999999");
+    static final float DISABLED_ALPHA = 0.3f;
+
+    private static final String LOG_TAG = "InAppBrowserWindow";
+
+    // Windows built and not destroyed yet, to check that closed windows do not leak
+    private static final AtomicInteger live = new AtomicInteger();
+
+    /**
+     * Told when the renderer of a window no session uses has gone away, so
+     * that whatever keeps the window drops it. The window is destroyed right
+     * after.
+     */
+    interface RendererGoneListener {
+        void onRendererGone(InAppBrowserWindow window);
+    }
+
+    /**
+     * The client of a window no session uses: it holds no session, and
+     * destroys the window when its renderer goes away instead of letting the
+     * app be killed with it.
+     */
+    static class DetachedClient extends WebViewClient {
+        final InAppBrowserWindow window;
+
+        DetachedClient(InAppBrowserWindow window) {
+            this.window = window;
+        }
+
+        @TargetApi(Build.VERSION_CODES.O)
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            LOG.e(LOG_TAG, "Renderer gone " + (detail.didCrash() ? "after a crash" : "to free memory") + ", destroying an unused window");
+            window.onRendererGone();
+            return true;
+        }
+    }
+
+    final WebView webView;
+
+    // Registered on the WebView by InAppBrowser, by name
+    private final HashMap<String, Object> javascriptInterfaces = new HashMap<String, Object>();
+
+    // The session shown in this window, null while it is pooled or prerendered
+    BrowserSession session;
+
+    // Built by InAppBrowser.createChrome() once the WebView has started loading
+    InAppBrowserDialog dialog;
+    TextView titleView;
+    ProgressBar loadingProgressBar;
+    Button closeButton;
+    ViewStub couponCodeStub;
+    ViewStub bottomToolbarStub;
+    ViewStub errorStub;
+
+    // Only set once the matching stub has been inflated
+    Button couponCodeButton;
+    View bottomToolbar;
+    TextView cashbackView;
+    Button backButton;
+    Button forwardButton;
+    View errorView;
+    TextView errorStatusView;
+
+    // The page that failed to load, and how many times in a row, while the error page is shown
+    final LoadFailures loadFailures = new LoadFailures();
+    private Runnable pendingRetry;
+
+    private boolean loading = false;
+    // The WebView is paused while the window is hidden or the app is in the background
+    private boolean hidden = false;
+    private boolean backgrounded = false;
+    private boolean paused = false;
+    // Set when the renderer has been killed, the WebView can then only be destroyed
+    boolean rendererGone = false;
+    // Set by the pool or the prerender cache while they keep the window
+    RendererGoneListener rendererGoneListener;
+    private boolean destroyed = false;
+    // Set by reset(): clearHistory() keeps the about:blank page the window was
+    // released on, so the history is cleared again once the next page has loaded
+    private boolean clearHistoryOnLoad = false;
+
+    InAppBrowserWindow(WebView webView) {
+        this.webView = webView;
+        live.incrementAndGet();
+        detachClients();
+    }
+
+    /**
+     * @return how many windows have been built and not destroyed
+     */
+    static int getLiveCount() {
+        return live.get();
+    }
+
+    /**
+     * Register a JavaScript interface, to be removed again by destroy().
+     *
+     * @param javascriptInterface   The object exposed to the pages.
+     * @param name                  Its name in the pages.
+     */
+    void addJavascriptInterface(Object javascriptInterface, String name) {
+        webView.addJavascriptInterface(javascriptInterface, name);
+        javascriptInterfaces.put(name, javascriptInterface);
+    }
+
+    /**
+     * Replace the clients of a closed session, which hold on to it, with
+     * clients that hold nothing.
+     */
+    void detachClients() {
+        webView.setWebViewClient(new DetachedClient(this));
+        webView.setWebChromeClient(new WebChromeClient());
+    }
+
+    /**
+     * Called by DetachedClient when the renderer has gone away: the window is
+     * dropped by whatever keeps it, then destroyed.
+     */
+    void onRendererGone() {
+        rendererGone = true;
+        RendererGoneListener listener = rendererGoneListener;
+        rendererGoneListener = null;
+        if (listener != null) {
+            listener.onRendererGone(this);
+        }
+        destroy();
+    }
+
+    /**
+     * Put the toolbars back in the state they have right after being built.
+     * The WebView is expected to have been navigated to about:blank already.
+     */
+    void reset() {
+        detachClients();
+        webView.clearHistory();
+        clearHistoryOnLoad();
+        setRendererPriority(false);
+        hidden = false;
+        backgrounded = false;
+        updatePaused();
+
+        titleView.setText("");
+        titleView.setContentDescription("");
+
+        if (cashbackView != null) {
+            cashbackView.setText("");
+            cashbackView.setContentDescription("");
+            cashbackView.setTextColor(CASHBACK_COLOR);
+            cashbackView.setPaintFlags(cashbackView.getPaintFlags() & ~Paint.STRIKE_THRU_TEXT_FLAG);
+            bottomToolbar.setVisibility(View.GONE);
+        }
+
+        if (couponCodeButton != null) {
+            couponCodeButton.setContentDescription("");
+            couponCodeButton.setEnabled(false);
+            couponCodeButton.setVisibility(View.GONE);
+        }
+
+        updateNavigationButtons();
+        setLoading(true);
+        hideError();
+    }
+
+    /**
+     * Show or hide the dialog. A hidden window keeps its page loaded, but its
+     * WebView is paused and its renderer is the first to go when memory is low.
+     *
+     * @param hidden        True to hide the dialog.
+     */
+    void setHidden(boolean hidden) {
+        this.hidden = hidden;
+        if (hidden) {
+            dialog.hide();
+        } else {
+            dialog.show();
+        }
+        setRendererPriority(hidden);
+        updatePaused();
+    }
+
+    boolean isHidden() {
+        return hidden;
+    }
+
+    /**
+     * Pause the WebView while the app is in the background.
+     *
+     * @param backgrounded  True when the app goes to the background.
+     */
+    void setBackgrounded(boolean backgrounded) {
+        this.backgrounded = backgrounded;
+        updatePaused();
+    }
+
+    private void updatePaused() {
+        boolean pause = hidden || backgrounded;
+        if (pause == paused) {
+            return;
+        }
+        paused = pause;
+        if (pause) {
+            webView.onPause();
+        } else {
+            webView.onResume();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void setRendererPriority(boolean hidden) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            if (hidden) {
+                webView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_WAIVED, true);
+            } else {
+                webView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_IMPORTANT, false);
+            }
+        }
+    }
+
+    /**
+     * Show or hide the loading indicator. It shares its spot with the coupon
+     * button, so it stays hidden while a coupon is shown.
+     */
+    void setLoading(boolean loading) {
+        this.loading = loading;
+        boolean couponShown = couponCodeButton != null && couponCodeButton.getVisibility() == View.VISIBLE;
+        loadingProgressBar.setVisibility(loading && !couponShown ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Show a page title in the top toolbar.
+     *
+     * @param title         The title, shown upper case.
+     */
+    void setTitle(String title) {
+        titleView.setText(title.toUpperCase());
+        titleView.setContentDescription(title);
+    }
+
+    /**
+     * Show what is known about the store the user was redirected to.
+     *
+     * @param title             The store name.
+     * @param cashback          The store cashback, see setCashback().
+     * @param couponCode        The store coupon, see setCouponCode().
+     * @param mobileFriendly    Whether the cashback applies to mobile purchases.
+     */
+    void setStoreInfo(String title, String cashback, String couponCode, boolean mobileFriendly) {
+        setTitle(title);
+        setCashback(cashback, mobileFriendly);
+        setCouponCode(couponCode);
+    }
+
+    /**
+     * Show the store cashback in the bottom toolbar.
+     *
+     * @param cashback          The text to show, the toolbar is left alone when empty.
+     * @param mobileFriendly    False to strike the cashback through.
+     */
+    void setCashback(String cashback, boolean mobileFriendly) {
+        if (cashback == null || cashback.length() == 0) {
+            if (cashbackView != null) {
+                cashbackView.setText("");
+                cashbackView.setContentDescription("");
+            }
+            return;
+        }
+        showBottomToolbar();
+        cashbackView.setText(cashback);
+        cashbackView.setContentDescription(cashback);
+        if (!mobileFriendly) {
+            cashbackView.setTextColor(CASHBACK_DISABLED_COLOR);
+            cashbackView.setPaintFlags(cashbackView.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
+        }
+    }
+
+    /**
+     * Show the coupon button in the top toolbar.
+     *
+     * @param couponCode    The code shown when the button is tapped, nothing is shown when empty.
+     */
+    void setCouponCode(String couponCode) {
+        if (couponCode == null || couponCode.length() == 0) {
+            return;
+        }
+        if (couponCodeButton == null) {
+            couponCodeStub.inflate();
+        }
+        couponCodeButton.setVisibility(View.VISIBLE);
+        couponCodeButton.setEnabled(true);
+        couponCodeButton.setContentDescription(couponCode);
+        setLoading(loading);
+    }
+
+    /**
+     * @return the coupon code of the current store, or null if there is none
+     */
+    CharSequence getCouponCode() {
+        return couponCodeButton != null && couponCodeButton.isEnabled() ? couponCodeButton.getContentDescription() : null;
+    }
+
+    /**
+     * Clear the history once the next page has finished loading, and ignore
+     * it until then.
+     */
+    void clearHistoryOnLoad() {
+        clearHistoryOnLoad = true;
+    }
+
+    /**
+     * Called when a page has finished loading. The first page of a window
+     * reused from the pool drops about:blank from the history.
+     */
+    void pageFinished() {
+        if (clearHistoryOnLoad) {
+            clearHistoryOnLoad = false;
+            webView.clearHistory();
+        }
+        updateNavigationButtons();
+    }
+
+    /**
+     * @return whether there is a page to go back to, about:blank excluded
+     */
+    boolean canGoBack() {
+        return !clearHistoryOnLoad && webView.canGoBack();
+    }
+
+    /**
+     * Enable the back/forward buttons according to the WebView history.
+     * The bottom toolbar is only inflated once there is somewhere to go.
+     */
+    void updateNavigationButtons() {
+        boolean canGoBack = canGoBack();
+        boolean canGoForward = webView.canGoForward();
+        if (backButton == null) {
+            if (!canGoBack && !canGoForward) {
+                return;
+            }
+            showBottomToolbar();
+        }
+        backButton.setEnabled(canGoBack);
+        backButton.setAlpha(canGoBack ? 1.0f : DISABLED_ALPHA);
+
+        forwardButton.setEnabled(canGoForward);
+        forwardButton.setAlpha(canGoForward ? 1.0f : DISABLED_ALPHA);
+    }
+
+    /**
+     * Show the error page over the WebView, or update its status line.
+     *
+     * @param status        What happens next, e.g. when the page is loaded again.
+     */
+    void showError(String status) {
+        if (errorView == null) {
+            errorStub.inflate();
+        }
+        errorStatusView.setText(status);
+        errorView.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Hide the error page and forget the failed page, its retry included.
+     */
+    void hideError() {
+        cancelRetry();
+        loadFailures.clear();
+        if (errorView != null) {
+            errorView.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Run a retry of the failed page after a delay, instead of any retry
+     * already waiting.
+     *
+     * @param retry         What loads the page again, run on the UI thread.
+     * @param delay         How long to wait, in milliseconds.
+     */
+    void scheduleRetry(Runnable retry, long delay) {
+        cancelRetry();
+        pendingRetry = retry;
+        webView.postDelayed(retry, delay);
+    }
+
+    void cancelRetry() {
+        if (pendingRetry != null) {
+            webView.removeCallbacks(pendingRetry);
+            pendingRetry = null;
+        }
+    }
+
+    private void showBottomToolbar() {
+        if (bottomToolbar == null) {
+            bottomToolbarStub.inflate();
+        }
+        bottomToolbar.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Release the WebView and everything that refers to it: its clients and
+     * JavaScript interfaces, its parent view and the dialog. The window can
+     * not be used afterwards, and destroying it again does nothing.
+     */
+    void destroy() {
+        if (destroyed) {
+            return;
+        }
+        destroyed = true;
+        session = null;
+        cancelRetry();
+        // Prerendered windows have no dialog
+        if (dialog != null) {
+            if (dialog.isShowing()) {
+                dialog.dismiss();
+            }
+            dialog.setWindow(null);
+            dialog.setInAppBroswer(null);
+        }
+        webView.stopLoading();
+        detachClients();
+        for (String name : javascriptInterfaces.keySet()) {
+            webView.removeJavascriptInterface(name);
+        }
+        javascriptInterfaces.clear();
+        // destroy() must only be called once the WebView is out of the view hierarchy
+        ViewParent parent = webView.getParent();
+        if (parent instanceof ViewGroup) {
+            ((ViewGroup) parent).removeView(webView);
+        }
+        webView.removeAllViews();
+        webView.destroy();
+        live.decrementAndGet();
+    }
+}
@@ -33,16 +33,46 @@ import android.webkit.GeolocationPermissions.Callback;
 
 public class InAppChromeClient extends WebChromeClient {
 
+    // WebView reports this much as soon as a navigation starts, before anything is received
+    private static final int INITIAL_PROGRESS = 10;
+
     private CordovaWebView webView;
+    private BrowserSession session;
     private String LOG_TAG = "InAppChromeClient";
-    private long MAX_QUOTA = 100 * 1024 * 1024;
+    // The most a page may get, even if it asks for more
+    private static final long MAX_QUOTA = 50 * 1024 * 1024;
 
     public InAppChromeClient(CordovaWebView webView) {
         super();
         this.webView = webView;
     }
+
+    /**
+     * @param webView       The Cordova WebView.
+     * @param session       The session whose navigations are timed.
+     */
+    public InAppChromeClient(CordovaWebView webView, BrowserSession session) {
+        this(webView);
+        this.session = session;
+    }
+
+    /**
+     * Record the first progress of the current navigation.
+     *
+     * @param view
+     * @param newProgress
+     */
+    @Override
+    public void onProgressChanged(WebView view, int newProgress) {
+        super.onProgressChanged(view, newProgress);
+        NavigationTimeline timeline = session != null ? session.navigation : null;
+        if (timeline != null && !timeline.isFinished() && newProgress > INITIAL_PROGRESS) {
+            timeline.progressChanged();
+        }
+    }
     /**
-     * Handle database quota exceeded notification.
+     * Handle database quota exceeded notification. The database gets the size
+     * it is estimated to need, up to MAX_QUOTA.
      *
      * @param url
      * @param databaseIdentifier
@@ -56,7 +86,7 @@ public class InAppChromeClient extends WebChromeClient {
             long totalUsedQuota, WebStorage.QuotaUpdater quotaUpdater)
     {
         LOG.d(LOG_TAG, "onExceededDatabaseQuota estimatedSize: %d  currentQuota: %d  totalUsedQuota: %d", estimatedSize, currentQuota, totalUsedQuota);
-        quotaUpdater.updateQuota(MAX_QUOTA);
+        quotaUpdater.updateQuota(Math.min(Math.max(estimatedSize, currentQuota), MAX_QUOTA));
     }
 
     /**
@@ -91,6 +121,9 @@ public class InAppChromeClient extends WebChromeClient {
      * If present, the prompt message is expected to be a JSON-encoded value to
      * pass to the callback. A JSON_EXCEPTION is returned if the JSON is invalid.
      *
+     * The plugin's own injections post their results through ScriptResultChannel
+     * instead; this bridge is kept for scripts that still call it.
+     *
      * @param view
      * @param url
      * @param message
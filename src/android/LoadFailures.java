@@ -0,0 +1,89 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+/**
+ * Counts the failures to load the page of a window, for its RetryPolicy.
+ *
+ * The count is per page: a failure of another page starts it again. Failures
+ * while offline do not count, the page is loaded again once the connection is
+ * back, with a new round of attempts.
+ *
+ * Used on the UI thread only.
+ */
+class LoadFailures {
+
+    // The page that failed to load, while its error page is shown
+    private String url;
+    private int attempts = 0;
+    private int lastAttempt = 0;
+
+    /**
+     * Count a failure to load a page.
+     *
+     * @param failingUrl    The page that failed to load.
+     * @param errorCode     The WebViewClient error code.
+     * @param connected     Whether the device is online.
+     * @param policy        When to retry.
+     * @return              How long to wait before loading the page again, in
+     *                      milliseconds, or -1 to not retry: offline, or given up.
+     */
+    long failed(String failingUrl, int errorCode, boolean connected, RetryPolicy policy) {
+        if (!failingUrl.equals(url)) {
+            url = failingUrl;
+            attempts = 0;
+        }
+        lastAttempt = attempts + 1;
+        if (!connected) {
+            return -1;
+        }
+        attempts = lastAttempt;
+        return policy.delayAfter(attempts, errorCode);
+    }
+
+    /**
+     * @return the page that failed to load, or null
+     */
+    String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return which attempt the last failure was, the first load being 1
+     */
+    int getLastAttempt() {
+        return lastAttempt;
+    }
+
+    /**
+     * Give the page a new round of attempts, e.g. when the connection is back.
+     */
+    void newRound() {
+        attempts = 0;
+    }
+
+    /**
+     * Forget the failed page, once it or another page has loaded.
+     */
+    void clear() {
+        url = null;
+        attempts = 0;
+        lastAttempt = 0;
+    }
+}
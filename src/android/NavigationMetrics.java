@@ -0,0 +1,138 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Rolling percentiles over the last navigations of every browser window, for
+ * the getMetrics action.
+ *
+ * Opening navigations, the first one after open(), are measured from the open()
+ * call, which gives the open-to-interactive time. Every navigation counts for
+ * the load time, redirects and resources. Safe to use from any thread.
+ */
+class NavigationMetrics {
+
+    /**
+     * The last values of one measure, oldest overwritten first.
+     */
+    private static class Series {
+        private final long[] values;
+        private int size;
+        private int next;
+
+        Series(int capacity) {
+            values = new long[capacity];
+        }
+
+        void add(long value) {
+            if (value < 0) {
+                return;
+            }
+            values[next] = value;
+            next = (next + 1) % values.length;
+            if (size < values.length) {
+                size++;
+            }
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject obj = new JSONObject();
+            obj.put("count", size);
+            if (size > 0) {
+                long[] sorted = Arrays.copyOf(values, size);
+                Arrays.sort(sorted);
+                obj.put("p50", percentile(sorted, 50));
+                obj.put("p95", percentile(sorted, 95));
+            }
+            return obj;
+        }
+
+        // Nearest rank
+        private static long percentile(long[] sorted, int percent) {
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+    }
+
+    private final Series opened;
+    private final Series firstProgress;
+    private final Series interactive;
+    private final Series load;
+    private final Series redirects;
+    private final Series resources;
+    private final Series blocked;
+    private final Series bytes;
+
+    /**
+     * @param capacity      How many of the last values are kept for each measure.
+     */
+    NavigationMetrics(int capacity) {
+        opened = new Series(capacity);
+        firstProgress = new Series(capacity);
+        interactive = new Series(capacity);
+        load = new Series(capacity);
+        redirects = new Series(capacity);
+        resources = new Series(capacity);
+        blocked = new Series(capacity);
+        bytes = new Series(capacity);
+    }
+
+    /**
+     * @param timeline      A finished navigation.
+     */
+    synchronized void add(NavigationTimeline timeline) {
+        if (timeline.isOpening()) {
+            opened.add(timeline.getCreated());
+            firstProgress.add(timeline.getProgress());
+            interactive.add(timeline.getFinished());
+        }
+        load.add(timeline.getLoadTime());
+        redirects.add(timeline.getRedirects());
+        resources.add(timeline.getResources());
+        blocked.add(timeline.getBlocked());
+        bytes.add(timeline.getBytes());
+    }
+
+    /**
+     * @return the percentiles of every measure, times in milliseconds
+     */
+    synchronized JSONObject toJSON() throws JSONException {
+        JSONObject open = new JSONObject();
+        open.put("created", opened.toJSON());
+        open.put("progress", firstProgress.toJSON());
+        open.put("stop", interactive.toJSON());
+
+        JSONObject navigation = new JSONObject();
+        navigation.put("load", load.toJSON());
+        navigation.put("redirects", redirects.toJSON());
+        navigation.put("resources", resources.toJSON());
+        navigation.put("blocked", blocked.toJSON());
+        navigation.put("bytes", bytes.toJSON());
+
+        JSONObject obj = new JSONObject();
+        obj.put("open", open);
+        obj.put("navigation", navigation);
+        return obj;
+    }
+}
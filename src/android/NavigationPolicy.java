@@ -0,0 +1,202 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.net.Uri;
+import android.util.Log;
+
+import org.apache.cordova.Config;
+import org.apache.cordova.CordovaWebView;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides whether a _self open may load in the Cordova WebView.
+ *
+ * This code exists for compatibility between 3.x and 4.x versions of Cordova.
+ * Previously the Config class had a static method, isUrlWhitelisted(). That
+ * responsibility has been moved to the plugins, with an aggregating method in
+ * PluginManager. Which one this Cordova has is found by reflection once, and
+ * the decisions are kept by URL without its query and fragment, which
+ * whitelist patterns do not look at.
+ */
+class NavigationPolicy {
+
+    private static final String LOG_TAG = "NavigationPolicy";
+    private static final int MAX_DECISIONS = 64;
+
+    /**
+     * One way of asking Cordova.
+     */
+    private interface Strategy {
+        /**
+         * @return              Whether the url is allowed, or null if Cordova did not say.
+         */
+        Boolean shouldAllowNavigation(String url);
+    }
+
+    /**
+     * Cordova 3.x: the static Config.isUrlWhiteListed(), then the plugins if
+     * it fails, e.g. because Config has not been initialized.
+     */
+    private static class ConfigStrategy implements Strategy {
+        private final Method isUrlWhiteListed;
+        private final Strategy fallback;
+
+        ConfigStrategy(Method isUrlWhiteListed, Strategy fallback) {
+            this.isUrlWhiteListed = isUrlWhiteListed;
+            this.fallback = fallback;
+        }
+
+        public Boolean shouldAllowNavigation(String url) {
+            Boolean allowed = null;
+            try {
+                allowed = (Boolean) isUrlWhiteListed.invoke(null, url);
+            } catch (IllegalAccessException e) {
+            } catch (InvocationTargetException e) {
+            }
+            return allowed != null ? allowed : fallback.shouldAllowNavigation(url);
+        }
+    }
+
+    /**
+     * Cordova 4.x: PluginManager.shouldAllowNavigation(), which asks every plugin.
+     */
+    private static class PluginManagerStrategy implements Strategy {
+        private final Object pluginManager;
+        private final Method shouldAllowNavigation;
+
+        PluginManagerStrategy(Object pluginManager, Method shouldAllowNavigation) {
+            this.pluginManager = pluginManager;
+            this.shouldAllowNavigation = shouldAllowNavigation;
+        }
+
+        public Boolean shouldAllowNavigation(String url) {
+            try {
+                return (Boolean) shouldAllowNavigation.invoke(pluginManager, url);
+            } catch (IllegalAccessException e) {
+            } catch (InvocationTargetException e) {
+            }
+            return null;
+        }
+    }
+
+    private static final Strategy DENY_ALL = new Strategy() {
+        public Boolean shouldAllowNavigation(String url) {
+            return null;
+        }
+    };
+
+    private final CordovaWebView webView;
+    private Strategy strategy;
+    private final LinkedHashMap<String, Boolean> decisions = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_DECISIONS;
+        }
+    };
+
+    /**
+     * @param webView       The Cordova WebView, whose plugins are asked on Cordova 4.x.
+     */
+    NavigationPolicy(CordovaWebView webView) {
+        this.webView = webView;
+    }
+
+    /**
+     * @param url           The url passed to open().
+     * @return              Whether it may load in the Cordova WebView.
+     */
+    synchronized boolean shouldAllowNavigation(String url) {
+        if (url.startsWith("javascript:")) {
+            return true;
+        }
+        String key = decisionKey(url);
+        Boolean allowed = decisions.get(key);
+        if (allowed == null) {
+            if (strategy == null) {
+                strategy = findStrategy();
+            }
+            allowed = strategy.shouldAllowNavigation(url);
+            if (allowed == null) {
+                // Cordova did not answer, ask again next time rather than remember a deny
+                return false;
+            }
+            decisions.put(key, allowed);
+        }
+        return allowed.booleanValue();
+    }
+
+    /**
+     * Forget the decisions, e.g. when the Cordova WebView is reset and its
+     * configuration or plugins may have changed.
+     */
+    synchronized void clear() {
+        decisions.clear();
+        strategy = null;
+    }
+
+    private Strategy findStrategy() {
+        Strategy pluginManagerStrategy = findPluginManagerStrategy();
+        try {
+            return new ConfigStrategy(Config.class.getMethod("isUrlWhiteListed", String.class),
+                    pluginManagerStrategy != null ? pluginManagerStrategy : DENY_ALL);
+        } catch (NoSuchMethodException e) {
+        }
+        if (pluginManagerStrategy != null) {
+            return pluginManagerStrategy;
+        }
+        Log.d(LOG_TAG, "No whitelist found, _self opens will not load in the Cordova WebView");
+        return DENY_ALL;
+    }
+
+    /**
+     * @return the strategy asking the plugins, or null if this Cordova has no PluginManager
+     */
+    private Strategy findPluginManagerStrategy() {
+        try {
+            Method gpm = webView.getClass().getMethod("getPluginManager");
+            Object pm = gpm.invoke(webView);
+            if (pm != null) {
+                return new PluginManagerStrategy(pm, pm.getClass().getMethod("shouldAllowNavigation", String.class));
+            }
+        } catch (NoSuchMethodException e) {
+        } catch (IllegalAccessException e) {
+        } catch (InvocationTargetException e) {
+        }
+        return null;
+    }
+
+    /**
+     * @return the url without its query and fragment
+     */
+    private static String decisionKey(String url) {
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+        if (scheme == null || uri.isOpaque()) {
+            return url;
+        }
+        String authority = uri.getEncodedAuthority();
+        String path = uri.getEncodedPath();
+        return scheme + "://" + (authority == null ? "" : authority) + (path == null ? "" : path);
+    }
+}
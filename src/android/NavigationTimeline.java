@@ -0,0 +1,240 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The timeline of one navigation of a browser window, from the page starting
+ * to load, through any redirect, until it has finished.
+ *
+ * Times are in milliseconds from the origin: when open() was called for the
+ * first navigation of a window, when the page started loading for the others.
+ * The timeline is written on the UI thread, except for the resource counters
+ * which are updated from the WebView network threads.
+ */
+class NavigationTimeline {
+
+    static final String METRICS_EVENT = "metrics";
+
+    // Where the WebView of an opening navigation came from
+    static final String WINDOW_CREATED = "created";
+    static final String WINDOW_POOLED = "pooled";
+    static final String WINDOW_PRERENDERED = "prerendered";
+
+    private final long origin;
+    private final boolean opening;
+    private final AtomicInteger resources = new AtomicInteger();
+    private final AtomicInteger blocked = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private String url;
+    private String window;
+    private long created = -1;
+    private long started = -1;
+    private long progress = -1;
+    private long finished = -1;
+    private int redirects;
+
+    /**
+     * @param origin        The elapsedRealtime() the times are measured from.
+     * @param opening       Whether this is the first navigation after open().
+     * @param url           The page that started loading.
+     */
+    NavigationTimeline(long origin, boolean opening, String url) {
+        this.origin = origin;
+        this.opening = opening;
+        this.url = url;
+    }
+
+    /**
+     * Record when the WebView of an opening navigation was ready.
+     *
+     * @param at            The elapsedRealtime() it was ready at.
+     * @param window        WINDOW_CREATED, WINDOW_POOLED or WINDOW_PRERENDERED.
+     */
+    void windowReady(long at, String window) {
+        this.created = at - origin;
+        this.window = window;
+    }
+
+    void pageStarted() {
+        if (started < 0) {
+            started = now();
+        }
+    }
+
+    /**
+     * Another page started loading before this one finished: a redirect.
+     *
+     * @param url           The page redirected to.
+     */
+    void redirected(String url) {
+        this.url = url;
+        redirects++;
+    }
+
+    void progressChanged() {
+        if (progress < 0) {
+            progress = now();
+        }
+    }
+
+    /**
+     * @param url           The page that finished loading.
+     * @return              False if the navigation had already finished.
+     */
+    boolean pageFinished(String url) {
+        if (finished >= 0) {
+            return false;
+        }
+        this.url = url;
+        finished = now();
+        return true;
+    }
+
+    boolean isFinished() {
+        return finished >= 0;
+    }
+
+    boolean isOpening() {
+        return opening;
+    }
+
+    /**
+     * Count a resource request of the page. Safe from any thread.
+     */
+    void resourceRequested() {
+        resources.incrementAndGet();
+    }
+
+    /**
+     * Count a resource request of the page the content blocker did not let
+     * through. Safe from any thread.
+     */
+    void resourceBlocked() {
+        blocked.incrementAndGet();
+    }
+
+    /**
+     * Count the bytes of a response handed to the WebView as they are read.
+     *
+     * @param data          The response body.
+     * @return              A stream to hand over instead.
+     */
+    InputStream countBytes(InputStream data) {
+        if (data == null) {
+            return null;
+        }
+        return new FilterInputStream(data) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytes.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) throws IOException {
+                int read = super.read(buffer, offset, count);
+                if (read > 0) {
+                    bytes.addAndGet(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    long getCreated() {
+        return created;
+    }
+
+    long getProgress() {
+        return progress;
+    }
+
+    long getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the time from the page starting to load to it having finished
+     */
+    long getLoadTime() {
+        return finished - Math.max(started, 0);
+    }
+
+    int getRedirects() {
+        return redirects;
+    }
+
+    int getResources() {
+        return resources.get();
+    }
+
+    int getBlocked() {
+        return blocked.get();
+    }
+
+    long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return the metrics event, times that were not recorded are left out
+     */
+    JSONObject toEvent() throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("type", METRICS_EVENT);
+        obj.put("url", url);
+        if (opening) {
+            obj.put("window", window);
+            putTime(obj, "created", created);
+        }
+        putTime(obj, "start", started);
+        putTime(obj, "progress", progress);
+        putTime(obj, "stop", finished);
+        obj.put("redirects", redirects);
+        obj.put("resources", resources.get());
+        obj.put("blocked", blocked.get());
+        obj.put("bytes", bytes.get());
+        return obj;
+    }
+
+    private static void putTime(JSONObject obj, String name, long time) throws JSONException {
+        if (time >= 0) {
+            obj.put(name, time);
+        }
+    }
+
+    private long now() {
+        return SystemClock.elapsedRealtime() - origin;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebView;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pages loaded ahead of time in offscreen WebViews, not attached to any dialog,
+ * so that opening one of them only has to build the toolbars around it.
+ *
+ * The number of prerendered pages is bounded by the requested limit and by the
+ * memory of the device: nothing is prerendered on low RAM devices, and at most
+ * one page per 64 MB of application heap otherwise. The least recently
+ * requested page is evicted first, and pages are dropped after a while so that
+ * a stale page is never shown. All methods must be called on the UI thread.
+ */
+class PrerenderCache {
+
+    private static final String LOG_TAG = "PrerenderCache";
+
+    // Heap, in megabytes, to allow for each prerendered WebView
+    private static final int HEAP_PER_PAGE = 64;
+    private static final long MAX_AGE_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Builds the offscreen windows.
+     */
+    interface Factory {
+        InAppBrowserWindow createWindow();
+    }
+
+    /**
+     * A page being loaded, or loaded, offscreen.
+     */
+    static class Page {
+        final InAppBrowserWindow window;
+        final long createdAt;
+        boolean finished;
+        // Set when the page navigated to a link for another app, which is not opened offscreen
+        boolean external;
+
+        Page(InAppBrowserWindow window) {
+            this.window = window;
+            this.createdAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private final LinkedHashMap<String, Page> pages = new LinkedHashMap<String, Page>(4, 0.75f, true);
+    private final Factory factory;
+    private final SchemeRouter schemeRouter;
+    private final int maxPages;
+    // Whether the WebViews are paused, while the app is in the background
+    private boolean paused = false;
+
+    // Drops a page whose renderer has gone away
+    private final InAppBrowserWindow.RendererGoneListener rendererGoneListener = new InAppBrowserWindow.RendererGoneListener() {
+        @Override
+        public void onRendererGone(InAppBrowserWindow window) {
+            Iterator<Page> it = pages.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().window == window) {
+                    it.remove();
+                    return;
+                }
+            }
+        }
+    };
+
+    /**
+     * @param context       Used to look up the memory of the device.
+     * @param factory       Builds the offscreen windows.
+     * @param schemeRouter  Tells the links the offscreen windows must not load.
+     * @param requested     The most pages the app wants prerendered at once.
+     */
+    PrerenderCache(Context context, Factory factory, SchemeRouter schemeRouter, int requested) {
+        this.factory = factory;
+        this.schemeRouter = schemeRouter;
+        this.maxPages = Math.min(requested, memoryLimit(context));
+    }
+
+    /**
+     * @return the most pages that can be prerendered at once, 0 if prerendering is disabled
+     */
+    int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * Start loading a page offscreen. Does nothing if it is already prerendered.
+     *
+     * @param url           The page to load.
+     * @return              False if prerendering is disabled.
+     */
+    boolean prerender(String url) {
+        if (maxPages <= 0) {
+            return false;
+        }
+        Page page = pages.get(url);
+        if (page != null && !isExpired(page)) {
+            return true;
+        }
+        if (page != null) {
+            remove(url);
+        }
+        while (pages.size() >= maxPages) {
+            Iterator<Map.Entry<String, Page>> eldest = pages.entrySet().iterator();
+            Map.Entry<String, Page> evicted = eldest.next();
+            eldest.remove();
+            Log.d(LOG_TAG, "Evicting " + evicted.getKey());
+            evicted.getValue().window.destroy();
+        }
+
+        final Page newPage = new Page(factory.createWindow());
+        newPage.window.rendererGoneListener = rendererGoneListener;
+        if (paused) {
+            newPage.window.setBackgrounded(true);
+        }
+        newPage.window.webView.setWebViewClient(new InAppBrowserWindow.DetachedClient(newPage.window) {
+            // Other apps are only started once the page is opened, by the client of its session
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, String url) {
+                if (schemeRouter.isExternal(url)) {
+                    Log.d(LOG_TAG, "Not prerendering past " + url);
+                    newPage.external = true;
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                newPage.finished = false;
+            }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                newPage.finished = true;
+            }
+        });
+        newPage.window.webView.loadUrl(url);
+        pages.put(url, newPage);
+        return true;
+    }
+
+    /**
+     * Hand over a prerendered page, which is no longer kept here.
+     *
+     * @param url           The URL the browser is opened with.
+     * @return              The page, or null if that URL has not been prerendered, or
+     *                      has to be loaded again to open another app.
+     */
+    Page take(String url) {
+        Page page = pages.remove(url);
+        if (page == null) {
+            return null;
+        }
+        if (isExpired(page) || page.external) {
+            page.window.destroy();
+            return null;
+        }
+        page.window.rendererGoneListener = null;
+        return page;
+    }
+
+    /**
+     * Drop a prerendered page.
+     *
+     * @param url           The URL passed to prerender().
+     */
+    void remove(String url) {
+        Page page = pages.remove(url);
+        if (page != null) {
+            page.window.destroy();
+        }
+    }
+
+    /**
+     * Drop every prerendered page, e.g. when the system is low on memory.
+     *
+     * @return              How many pages were dropped.
+     */
+    int clear() {
+        int count = pages.size();
+        for (Page page : pages.values()) {
+            page.window.destroy();
+        }
+        pages.clear();
+        return count;
+    }
+
+    /**
+     * Pause or resume the offscreen WebViews, e.g. while the app is in the background.
+     *
+     * @param paused        True to pause them.
+     */
+    void setPaused(boolean paused) {
+        this.paused = paused;
+        for (Page page : pages.values()) {
+            page.window.setBackgrounded(paused);
+        }
+    }
+
+    private static boolean isExpired(Page page) {
+        return SystemClock.elapsedRealtime() - page.createdAt > MAX_AGE_MILLIS;
+    }
+
+    private static int memoryLimit(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return 0;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && activityManager.isLowRamDevice()) {
+            return 0;
+        }
+        return activityManager.getMemoryClass() / HEAP_PER_PAGE;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.util.Log;
+import android.webkit.CookieManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Resolves a Méliuz redirect URL without rendering it.
+ *
+ * The redirect page is requested without following redirects, and its
+ * headers are read: the store metadata the page would otherwise expose in
+ * window.meliuz, and the merchant URL it would send the user to. Cookies are
+ * shared with the WebView both ways, so the affiliate attribution set by the
+ * redirect is kept.
+ *
+ * Each request to the redirect counts as a click, so the WebView never
+ * requests it again once it has answered: it goes to the next hop, or renders
+ * the page that was received. See InAppBrowser.resolveRedirect().
+ *
+ * Blocking, call it off the UI thread.
+ */
+class RedirectResolver {
+
+    private static final String LOG_TAG = "RedirectResolver";
+
+    static final String HEADER_STORE_TITLE = "X-Meliuz-Store-Title";
+    static final String HEADER_CASHBACK = "X-Meliuz-Cashback";
+    static final String HEADER_COUPON_CODE = "X-Meliuz-Coupon-Code";
+    static final String HEADER_MOBILE_FRIENDLY = "X-Meliuz-Mobile-Friendly";
+    static final String HEADER_REDIRECT_URL = "X-Meliuz-Redirect-Url";
+
+    // The window waits for the answer before loading anything
+    private static final int TIMEOUT_MILLIS = 1500;
+
+    /**
+     * What the redirect page would have told the browser.
+     */
+    static class StoreInfo {
+        final String url;
+        final String title;
+        final String cashback;
+        final String couponCode;
+        final boolean mobileFriendly;
+
+        StoreInfo(String url, String title, String cashback, String couponCode, boolean mobileFriendly) {
+            this.url = url;
+            this.title = title;
+            this.cashback = cashback;
+            this.couponCode = couponCode;
+            this.mobileFriendly = mobileFriendly;
+        }
+    }
+
+    /**
+     * What the WebView loads instead of the redirect URL.
+     */
+    static class Result {
+        /** The url to load, or the base url of the body. */
+        final String url;
+        /** The store metadata, or null if the redirect did not send it. */
+        final StoreInfo storeInfo;
+        /** The page the redirect answered with, or null if it is a redirect to url. */
+        final String body;
+        final String mimeType;
+        final String encoding;
+
+        Result(String url, StoreInfo storeInfo, String body, String mimeType, String encoding) {
+            this.url = url;
+            this.storeInfo = storeInfo;
+            this.body = body;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+        }
+    }
+
+    private RedirectResolver() {
+    }
+
+    /**
+     * Request the redirect page.
+     *
+     * @param redirectUrl   The Méliuz redirect URL the browser was opened with.
+     * @param userAgent     The user agent of the WebView, the merchant URL may depend on it.
+     * @return              What to load instead of the redirect URL, or null if the redirect
+     *                      did not answer and has to be loaded the usual way.
+     */
+    static Result resolve(String redirectUrl, String userAgent) {
+        if (!redirectUrl.startsWith("http:") && !redirectUrl.startsWith("https:")) {
+            return null;
+        }
+        HttpURLConnection connection = null;
+        try {
+            URL url = new URL(redirectUrl);
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            if (userAgent != null) {
+                connection.setRequestProperty("User-Agent", userAgent);
+            }
+            CookieManager cookieManager = CookieManager.getInstance();
+            String cookies = cookieManager.getCookie(redirectUrl);
+            if (cookies != null) {
+                connection.setRequestProperty("Cookie", cookies);
+            }
+
+            int status = connection.getResponseCode();
+
+            List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+            if (setCookies != null) {
+                for (String setCookie : setCookies) {
+                    cookieManager.setCookie(redirectUrl, setCookie);
+                }
+            }
+
+            String target = headerValue(connection, HEADER_REDIRECT_URL);
+            if (target == null && status >= 300 && status < 400) {
+                target = connection.getHeaderField("Location");
+            }
+            if (target == null) {
+                // A page of its own, render what was received
+                return readBody(connection, redirectUrl);
+            }
+            // Location may be relative
+            target = new URL(url, target).toString();
+
+            String title = headerValue(connection, HEADER_STORE_TITLE);
+            if (title == null) {
+                return new Result(target, null, null, null, null);
+            }
+            String cashback = headerValue(connection, HEADER_CASHBACK);
+            String couponCode = headerValue(connection, HEADER_COUPON_CODE);
+            String mobileFriendly = headerValue(connection, HEADER_MOBILE_FRIENDLY);
+            StoreInfo storeInfo = new StoreInfo(target, title, cashback == null ? "" : cashback,
+                    couponCode == null ? "" : couponCode, !"false".equals(mobileFriendly));
+            return new Result(target, storeInfo, null, null, null);
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "Could not resolve " + redirectUrl + ": " + e.toString());
+            return null;
+        } catch (RuntimeException e) {
+            Log.d(LOG_TAG, "Could not resolve " + redirectUrl + ": " + e.toString());
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Read the page the redirect answered with, error pages included.
+     */
+    private static Result readBody(HttpURLConnection connection, String redirectUrl) throws IOException {
+        String mimeType = "text/html";
+        String encoding = "UTF-8";
+        String contentType = connection.getContentType();
+        if (contentType != null) {
+            String[] parts = contentType.split(";");
+            if (parts[0].trim().length() > 0) {
+                mimeType = parts[0].trim();
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.regionMatches(true, 0, "charset=", 0, 8)) {
+                    String charset = part.substring(8).replace("\"", "").trim();
+                    try {
+                        if (Charset.isSupported(charset)) {
+                            encoding = charset;
+                        }
+                    } catch (IllegalArgumentException e) {
+                    }
+                }
+            }
+        }
+        InputStream in = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return new Result(redirectUrl, null, body.toString(encoding), mimeType, encoding);
+    }
+
+    /**
+     * Header values are URL encoded, so that they can carry non ASCII store names.
+     */
+    private static String headerValue(HttpURLConnection connection, String name) {
+        String value = connection.getHeaderField(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (IOException e) {
+            return value;
+        } catch (IllegalArgumentException e) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,866 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+/**
+ * Disk cache for the static resources of the pages opened in the browser
+ * (scripts, styles, images and fonts), kept apart from the WebView HTTP cache.
+ *
+ * Resources are stored on their first load, while they are streamed to the
+ * WebView, and evicted least recently used first once the cache is full. The
+ * freshness given by Cache-Control, Expires or Last-Modified is honored. A
+ * stale resource with an ETag or Last-Modified is still served, and revalidated
+ * in the background for the next load, unless it was sent with no-cache or
+ * must-revalidate: it is then revalidated before being served. A resource sent
+ * with Vary is only served to requests with the same values of those headers
+ * as the one it was stored for.
+ *
+ * Cookies are only sent with, and only taken from, the requests of resources
+ * of the same site as the page, as ContentBlocker tells sites apart. The
+ * resources of other sites are requested without cookies, or left to the
+ * WebView when it accepts third party cookies, so that its own third party and
+ * SameSite rules apply.
+ *
+ * Requests are intercepted on the WebView network threads, so everything here
+ * may block, but must be thread safe.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class ResourceCache {
+
+    private static final String LOG_TAG = "ResourceCache";
+
+    static final String DIRECTORY = "inappbrowser-resources";
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Pattern STATIC_PATH = Pattern.compile(".*\\.(js|css|png|jpe?g|gif|webp|svg|ico|woff2?|ttf|otf|eot)$", Pattern.CASE_INSENSITIVE);
+
+    // Response headers replayed when serving from the cache, the others are not needed by the WebView
+    private static final String[] STORED_HEADERS = {
+        "Access-Control-Allow-Origin", "Access-Control-Allow-Credentials", "Timing-Allow-Origin", "Content-Type"
+    };
+    // Request headers that must not be forwarded, HttpURLConnection handles them
+    private static final HashSet<String> SKIPPED_REQUEST_HEADERS = new HashSet<String>(Arrays.asList(
+        "accept-encoding", "range", "if-none-match", "if-modified-since", "cookie", "connection", "host"
+    ));
+
+    private static final int TIMEOUT_MILLIS = 15000;
+    private static final int MAX_REDIRECTS = 5;
+    // Heuristic freshness of resources with only a Last-Modified date is capped to a day
+    private static final long MAX_HEURISTIC_FRESHNESS = 24 * 60 * 60 * 1000L;
+
+    private final File directory;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final Executor executor;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+    private final HashSet<String> revalidating = new HashSet<String>();
+    private long totalBytes;
+    private boolean loaded;
+
+    /**
+     * What is known about a stored resource.
+     */
+    private static class Entry {
+        final String url;
+        final HashMap<String, String> headers;
+        long expires;
+        String etag;
+        String lastModified;
+        // Sent with no-cache or must-revalidate, so never served stale
+        boolean mustRevalidate;
+        // The request headers named by Vary, lower case, with the values they were stored for
+        HashMap<String, String> vary = new HashMap<String, String>();
+        long size;
+
+        Entry(String url, HashMap<String, String> headers) {
+            this.url = url;
+            this.headers = headers;
+        }
+
+        boolean hasValidator() {
+            return etag != null || lastModified != null;
+        }
+
+        /**
+         * @return whether the entry was stored for the values these request headers have
+         */
+        boolean matches(Map<String, String> requestHeaders) {
+            for (Map.Entry<String, String> header : vary.entrySet()) {
+                String value = headerValue(requestHeaders, header.getKey());
+                if (value == null ? header.getValue() != null : !value.equals(header.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("url", url);
+            json.put("headers", new JSONObject(headers));
+            json.put("expires", expires);
+            json.put("etag", etag);
+            json.put("lastModified", lastModified);
+            json.put("mustRevalidate", mustRevalidate);
+            JSONObject varyJSON = new JSONObject();
+            for (Map.Entry<String, String> header : vary.entrySet()) {
+                // A header the request did not have is kept as null
+                varyJSON.put(header.getKey(), header.getValue() == null ? JSONObject.NULL : header.getValue());
+            }
+            json.put("vary", varyJSON);
+            json.put("size", size);
+            return json;
+        }
+
+        static Entry fromJSON(JSONObject json) throws JSONException {
+            HashMap<String, String> headers = new HashMap<String, String>();
+            JSONObject storedHeaders = json.getJSONObject("headers");
+            Iterator<String> names = storedHeaders.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                headers.put(name, storedHeaders.getString(name));
+            }
+            Entry entry = new Entry(json.getString("url"), headers);
+            entry.expires = json.getLong("expires");
+            entry.etag = json.isNull("etag") ? null : json.getString("etag");
+            entry.lastModified = json.isNull("lastModified") ? null : json.getString("lastModified");
+            entry.mustRevalidate = json.optBoolean("mustRevalidate", false);
+            JSONObject varyJSON = json.optJSONObject("vary");
+            if (varyJSON != null) {
+                Iterator<String> varyNames = varyJSON.keys();
+                while (varyNames.hasNext()) {
+                    String name = varyNames.next();
+                    entry.vary.put(name, varyJSON.isNull(name) ? null : varyJSON.getString(name));
+                }
+            }
+            entry.size = json.getLong("size");
+            return entry;
+        }
+    }
+
+    /**
+     * @param directory     Where the resources are stored.
+     * @param maxBytes      How much disk space the cache may use.
+     * @param executor      Runs the background revalidations.
+     */
+    ResourceCache(File directory, long maxBytes, Executor executor) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        // A single resource may not push everything else out
+        this.maxEntryBytes = maxBytes / 8;
+        this.executor = executor;
+    }
+
+    /**
+     * Read the index of the stored resources, if it has not been read yet.
+     * Called on the first request otherwise.
+     */
+    synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.d(LOG_TAG, "Could not create " + directory);
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        ArrayList<File> metaFiles = new ArrayList<File>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // Left over by a load that did not complete
+                file.delete();
+            } else if (name.endsWith(META_SUFFIX)) {
+                metaFiles.add(file);
+            }
+        }
+        // Least recently stored first, the closest to LRU order without writing on every hit
+        Collections.sort(metaFiles, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File metaFile : metaFiles) {
+            String name = metaFile.getName();
+            String key = name.substring(0, name.length() - META_SUFFIX.length());
+            try {
+                Entry entry = Entry.fromJSON(new JSONObject(readFile(metaFile)));
+                if (bodyFile(key).length() == entry.size) {
+                    entries.put(key, entry);
+                    totalBytes += entry.size;
+                    continue;
+                }
+            } catch (IOException e) {
+                Log.d(LOG_TAG, "Could not read " + metaFile + ": " + e.toString());
+            } catch (JSONException e) {
+                Log.d(LOG_TAG, "Could not read " + metaFile + ": " + e.toString());
+            }
+            delete(key);
+        }
+        trimToSize();
+    }
+
+    /**
+     * Answer a request from the cache, or from the network while storing the response.
+     *
+     * @param method            The request method.
+     * @param url               The request URL.
+     * @param requestHeaders    The headers the WebView would have sent.
+     * @param pageHost          The host of the page requesting the resource, or null if unknown.
+     * @param thirdPartyCookies Whether the WebView accepts third party cookies.
+     * @return                  The response, or null to let the WebView load the resource itself.
+     */
+    WebResourceResponse intercept(String method, String url, Map<String, String> requestHeaders, String pageHost,
+            boolean thirdPartyCookies) {
+        if (!"GET".equalsIgnoreCase(method) || !isStaticResource(url) || hasHeader(requestHeaders, "Range")) {
+            return null;
+        }
+        if (thirdPartyCookies && !isSameSite(url, pageHost)) {
+            return null;
+        }
+        String key = keyFor(url);
+        Entry entry;
+        synchronized (this) {
+            load();
+            entry = entries.get(key);
+        }
+        if (entry != null && !entry.matches(requestHeaders)) {
+            // Stored for other request headers, replaced by the response to these ones
+            entry = null;
+        }
+        Entry validate = null;
+        if (entry != null) {
+            boolean fresh = entry.expires > System.currentTimeMillis();
+            if (!fresh && entry.mustRevalidate && entry.hasValidator()) {
+                // Revalidated below, before anything is served
+                validate = entry;
+            } else if (fresh || entry.hasValidator()) {
+                try {
+                    InputStream body = new FileInputStream(bodyFile(key));
+                    if (!fresh) {
+                        revalidate(key, entry, requestHeaders, pageHost);
+                    }
+                    Log.d(LOG_TAG, "Served from cache: " + url);
+                    return createResponse(200, "OK", entry.headers, body);
+                } catch (IOException e) {
+                    remove(key);
+                }
+            }
+        }
+        try {
+            return fetch(url, key, requestHeaders, pageHost, validate);
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "Could not load " + url + ": " + e.toString());
+            // The WebView reports its own error
+            return null;
+        }
+    }
+
+    /**
+     * Delete every stored resource.
+     */
+    synchronized void clear() {
+        load();
+        for (String key : new ArrayList<String>(entries.keySet())) {
+            delete(key);
+        }
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * @param validate      The stored entry to revalidate, or null for an unconditional request.
+     * @return              The response, or null to let the WebView load the resource itself.
+     */
+    private WebResourceResponse fetch(String url, String key, Map<String, String> requestHeaders, String pageHost,
+            Entry validate) throws IOException {
+        HttpURLConnection connection = openConnection(url, requestHeaders, pageHost, validate);
+        int status = connection.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && validate != null) {
+            refresh(key, validate, connection);
+            connection.disconnect();
+            try {
+                InputStream body = new FileInputStream(bodyFile(key));
+                Log.d(LOG_TAG, "Served from cache after revalidation: " + url);
+                return createResponse(200, "OK", validate.headers, body);
+            } catch (IOException e) {
+                remove(key);
+                return null;
+            }
+        }
+        if (status >= 300 && status < 400) {
+            // Too many redirects or no Location: WebResourceResponse does not take 3xx statuses
+            connection.disconnect();
+            return null;
+        }
+        HashMap<String, String> headers = storedHeaders(connection);
+        String reason = connection.getResponseMessage();
+        if (reason == null || reason.length() == 0) {
+            reason = status < 400 ? "OK" : "Error";
+        }
+        if (status != 200) {
+            InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            return createResponse(status, reason, headers, body);
+        }
+        InputStream body = connection.getInputStream();
+        long now = System.currentTimeMillis();
+        HashMap<String, String> vary = varyValues(connection, requestHeaders);
+        if (vary != null && isStorable(connection)) {
+            Entry entry = new Entry(url, headers);
+            entry.vary = vary;
+            entry.expires = now + freshnessLifetime(connection, now);
+            entry.etag = connection.getHeaderField("ETag");
+            entry.lastModified = connection.getHeaderField("Last-Modified");
+            entry.mustRevalidate = mustRevalidate(connection);
+            if (entry.expires > now || entry.hasValidator()) {
+                body = new CachingInputStream(body, connection, key, entry);
+            }
+        }
+        return createResponse(status, reason, headers, body);
+    }
+
+    private void revalidate(final String key, final Entry entry, final Map<String, String> requestHeaders, final String pageHost) {
+        synchronized (this) {
+            if (!revalidating.add(key)) {
+                return;
+            }
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                HttpURLConnection connection = null;
+                try {
+                    connection = openConnection(entry.url, requestHeaders, pageHost, entry);
+                    int status = connection.getResponseCode();
+                    long now = System.currentTimeMillis();
+                    HashMap<String, String> vary = varyValues(connection, requestHeaders);
+                    if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        refresh(key, entry, connection);
+                    } else if (status == 200 && vary != null && isStorable(connection)) {
+                        Entry updated = new Entry(entry.url, storedHeaders(connection));
+                        updated.vary = vary;
+                        updated.expires = now + freshnessLifetime(connection, now);
+                        updated.etag = connection.getHeaderField("ETag");
+                        updated.lastModified = connection.getHeaderField("Last-Modified");
+                        updated.mustRevalidate = mustRevalidate(connection);
+                        InputStream body = new CachingInputStream(connection.getInputStream(), connection, key, updated);
+                        connection = null;
+                        try {
+                            byte[] buffer = new byte[8192];
+                            while (body.read(buffer) >= 0) {
+                                // Stored as it is read
+                            }
+                        } finally {
+                            body.close();
+                        }
+                    } else {
+                        remove(key);
+                    }
+                } catch (IOException e) {
+                    Log.d(LOG_TAG, "Could not revalidate " + entry.url + ": " + e.toString());
+                } finally {
+                    if (connection != null) {
+                        connection.disconnect();
+                    }
+                    synchronized (ResourceCache.this) {
+                        revalidating.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Extend the freshness of an entry after a 304 Not Modified.
+     */
+    private synchronized void refresh(String key, Entry entry, HttpURLConnection connection) {
+        long now = System.currentTimeMillis();
+        entry.expires = now + freshnessLifetime(connection, now);
+        String etag = connection.getHeaderField("ETag");
+        if (etag != null) {
+            entry.etag = etag;
+        }
+        try {
+            writeMeta(key, entry);
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "Could not update " + entry.url + ": " + e.toString());
+        }
+    }
+
+    private HttpURLConnection openConnection(String url, Map<String, String> requestHeaders, String pageHost, Entry validate)
+            throws IOException {
+        for (int redirects = 0; ; redirects++) {
+            // Each hop of a redirect may be another site
+            boolean sameSite = isSameSite(url, pageHost);
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            // Followed below, HttpURLConnection does not follow http/https changes
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            if (requestHeaders != null) {
+                for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                    if (!SKIPPED_REQUEST_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+                        connection.setRequestProperty(header.getKey(), header.getValue());
+                    }
+                }
+            }
+            CookieManager cookieManager = CookieManager.getInstance();
+            String cookies = sameSite ? cookieManager.getCookie(url) : null;
+            if (cookies != null) {
+                connection.setRequestProperty("Cookie", cookies);
+            }
+            if (validate != null) {
+                if (validate.etag != null) {
+                    connection.setRequestProperty("If-None-Match", validate.etag);
+                }
+                if (validate.lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", validate.lastModified);
+                }
+            }
+
+            int status = connection.getResponseCode();
+            List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+            if (setCookies != null && sameSite) {
+                for (String setCookie : setCookies) {
+                    cookieManager.setCookie(url, setCookie);
+                }
+            }
+            String location = connection.getHeaderField("Location");
+            if (status < 300 || status >= 400 || status == HttpURLConnection.HTTP_NOT_MODIFIED || location == null
+                    || redirects >= MAX_REDIRECTS) {
+                return connection;
+            }
+            connection.disconnect();
+            url = new URL(new URL(url), location).toString();
+        }
+    }
+
+    /**
+     * @return whether the resource belongs to the same site as the page, false if either is unknown
+     */
+    private static boolean isSameSite(String url, String pageHost) {
+        if (pageHost == null) {
+            return false;
+        }
+        try {
+            String host = new URL(url).getHost();
+            return host.length() > 0 && ContentBlocker.isSameSite(host, pageHost);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private WebResourceResponse createResponse(int status, String reason, Map<String, String> headers, InputStream body) {
+        String mimeType = null;
+        String encoding = null;
+        String contentType = headers.get("Content-Type");
+        if (contentType != null) {
+            String[] parts = contentType.split(";");
+            mimeType = parts[0].trim();
+            for (int i = 1; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.toLowerCase(Locale.ENGLISH).startsWith("charset=")) {
+                    encoding = part.substring(8).replace("\"", "");
+                }
+            }
+        }
+        return new WebResourceResponse(mimeType, encoding, status, reason, headers, body);
+    }
+
+    private static HashMap<String, String> storedHeaders(HttpURLConnection connection) {
+        HashMap<String, String> headers = new HashMap<String, String>();
+        for (String name : STORED_HEADERS) {
+            String value = connection.getHeaderField(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        return headers;
+    }
+
+    private static boolean isStorable(HttpURLConnection connection) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null && cacheControl.toLowerCase(Locale.ENGLISH).contains("no-store")) {
+            return false;
+        }
+        // Cookies would not be set again when serving from the cache
+        return connection.getHeaderField("Set-Cookie") == null;
+    }
+
+    /**
+     * The values the request had for the headers named by the Vary of the
+     * response. Accept-Encoding is left out: it is not forwarded, so it is the
+     * same for every request.
+     *
+     * @return the header values by lower case name, or null if the response
+     *         varies on something requests can not be matched on
+     */
+    private static HashMap<String, String> varyValues(HttpURLConnection connection, Map<String, String> requestHeaders) {
+        HashMap<String, String> values = new HashMap<String, String>();
+        List<String> varyHeaders = connection.getHeaderFields().get("Vary");
+        if (varyHeaders == null) {
+            return values;
+        }
+        for (String varyHeader : varyHeaders) {
+            for (String name : varyHeader.split(",")) {
+                name = name.trim().toLowerCase(Locale.ENGLISH);
+                if (name.length() == 0 || name.equals("accept-encoding")) {
+                    continue;
+                }
+                if (name.equals("*") || name.equals("cookie")) {
+                    // Cookies are added here, not by the WebView, so the request headers do not have them
+                    return null;
+                }
+                values.put(name, headerValue(requestHeaders, name));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return whether a stale copy of the response must not be served before it is revalidated
+     */
+    private static boolean mustRevalidate(HttpURLConnection connection) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl == null) {
+            return false;
+        }
+        for (String directive : cacheControl.toLowerCase(Locale.ENGLISH).split(",")) {
+            directive = directive.trim();
+            if (directive.equals("no-cache") || directive.equals("must-revalidate")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * How long a response stays fresh, following RFC 7234.
+     */
+    private static long freshnessLifetime(HttpURLConnection connection, long now) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.ENGLISH).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-cache")) {
+                    return 0;
+                }
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        return Math.max(0, Long.parseLong(directive.substring(8).trim())) * 1000;
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        long date = connection.getDate();
+        if (date <= 0) {
+            date = now;
+        }
+        long expires = connection.getExpiration();
+        if (expires > 0) {
+            return Math.max(0, expires - date);
+        }
+        long lastModified = connection.getLastModified();
+        if (lastModified > 0 && lastModified < date) {
+            return Math.min((date - lastModified) / 10, MAX_HEURISTIC_FRESHNESS);
+        }
+        return 0;
+    }
+
+    private synchronized void commit(String key, Entry entry, File temp) {
+        try {
+            writeMeta(key, entry);
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "Could not store " + entry.url + ": " + e.toString());
+            temp.delete();
+            return;
+        }
+        File body = bodyFile(key);
+        if (!temp.renameTo(body)) {
+            temp.delete();
+            delete(key);
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            totalBytes -= previous.size;
+        }
+        totalBytes += entry.size;
+        trimToSize();
+    }
+
+    private synchronized void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            totalBytes -= entry.size;
+        }
+        delete(key);
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            totalBytes -= evicted.getValue().size;
+            delete(evicted.getKey());
+        }
+    }
+
+    private void writeMeta(String key, Entry entry) throws IOException {
+        File temp = new File(directory, key + META_SUFFIX + TEMP_SUFFIX);
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(entry.toJSON().toString().getBytes("UTF-8"));
+        } catch (JSONException e) {
+            throw new IOException(e.toString());
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(directory, key + META_SUFFIX))) {
+            temp.delete();
+            throw new IOException("Could not rename " + temp);
+        }
+    }
+
+    private void delete(String key) {
+        bodyFile(key).delete();
+        new File(directory, key + META_SUFFIX).delete();
+    }
+
+    private File bodyFile(String key) {
+        return new File(directory, key + BODY_SUFFIX);
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < buffer.length) {
+                int read = in.read(buffer, offset, buffer.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return new String(buffer, 0, offset, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean isStaticResource(String url) {
+        if (!url.startsWith("http:") && !url.startsWith("https:")) {
+            return false;
+        }
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        return STATIC_PATH.matcher(url.substring(0, end)).matches();
+    }
+
+    private static boolean hasHeader(Map<String, String> headers, String name) {
+        return headerValue(headers, name) != null;
+    }
+
+    private static String headerValue(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String keyFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hands the response to the WebView while writing it to a temporary file,
+     * which becomes the cached copy once the whole body has been read.
+     */
+    private class CachingInputStream extends FilterInputStream {
+        private final HttpURLConnection connection;
+        private final String key;
+        private final Entry entry;
+        private final File temp;
+        private OutputStream out;
+        private boolean complete;
+
+        CachingInputStream(InputStream in, HttpURLConnection connection, String key, Entry entry) {
+            super(in);
+            this.connection = connection;
+            this.key = key;
+            this.entry = entry;
+            this.temp = new File(directory, key + "." + Long.toHexString(System.nanoTime()) + TEMP_SUFFIX);
+            try {
+                out = new FileOutputStream(temp);
+            } catch (IOException e) {
+                Log.d(LOG_TAG, "Could not cache " + entry.url + ": " + e.toString());
+                out = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                complete = true;
+            } else {
+                store(new byte[] { (byte) b }, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read < 0) {
+                complete = true;
+            } else {
+                store(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped bytes would be missing from the cached copy
+            abandon();
+            return super.skip(count);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                connection.disconnect();
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        complete = false;
+                    }
+                    out = null;
+                    if (complete) {
+                        commit(key, entry, temp);
+                    } else {
+                        temp.delete();
+                    }
+                }
+            }
+        }
+
+        private void store(byte[] buffer, int offset, int count) {
+            if (out == null) {
+                return;
+            }
+            if (entry.size + count > maxEntryBytes) {
+                abandon();
+                return;
+            }
+            try {
+                out.write(buffer, offset, count);
+                entry.size += count;
+            } catch (IOException e) {
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Deleted anyway
+            }
+            out = null;
+            temp.delete();
+        }
+    }
+}
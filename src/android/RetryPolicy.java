@@ -0,0 +1,85 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.webkit.WebViewClient;
+
+import java.util.Random;
+
+/**
+ * When to load a page again after it failed to load: only for errors that may
+ * go away by themselves, such as a DNS failure or a timeout on a mobile
+ * network, up to a number of attempts, waiting twice as long before each retry.
+ *
+ * Each delay is cut by up to half at random, so that windows failing together,
+ * e.g. when the network drops, do not all retry at the same moment.
+ */
+class RetryPolicy {
+
+    // Delays never grow past this, in milliseconds
+    static final long MAX_DELAY = 30000;
+    private static final double JITTER = 0.5;
+
+    private static final Random random = new Random();
+
+    private final int maxAttempts;
+    private final long baseDelay;
+
+    /**
+     * @param maxAttempts   How many times to load a page, the first one included.
+     * @param baseDelay     The delay before the first retry, in milliseconds.
+     */
+    RetryPolicy(int maxAttempts, long baseDelay) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelay = Math.max(0, Math.min(baseDelay, MAX_DELAY));
+    }
+
+    /**
+     * @param attempt       How many times in a row the page failed to load.
+     * @param errorCode     The WebViewClient error code of the last failure.
+     * @return              How long to wait before loading it again, in
+     *                      milliseconds, or -1 to not retry.
+     */
+    long delayAfter(int attempt, int errorCode) {
+        if (attempt >= maxAttempts || !isTransient(errorCode)) {
+            return -1;
+        }
+        // Past 2^15 times the base delay it is capped anyway
+        long delay = Math.min(baseDelay << Math.min(attempt - 1, 15), MAX_DELAY);
+        return delay - (long) (delay * JITTER * random.nextDouble());
+    }
+
+    /**
+     * @param errorCode     A WebViewClient error code.
+     * @return              Whether loading again may succeed without the user doing anything.
+     */
+    static boolean isTransient(int errorCode) {
+        switch (errorCode) {
+            case WebViewClient.ERROR_UNKNOWN:
+            case WebViewClient.ERROR_HOST_LOOKUP:
+            case WebViewClient.ERROR_CONNECT:
+            case WebViewClient.ERROR_IO:
+            case WebViewClient.ERROR_TIMEOUT:
+            case WebViewClient.ERROR_TOO_MANY_REQUESTS:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import android.webkit.WebView;
+
+import org.apache.cordova.LOG;
+
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Hands links the WebView can not load (tel:, sms:, market:, intent:, app deep
+ * links...) to other apps, before any page load starts.
+ *
+ * Handlers are looked up by scheme; links with a scheme that has no handler
+ * open in whatever app can view them. The PackageManager is asked whether
+ * there is such an app once per kind of link, and asked again after the app is
+ * resumed, as another app may have been installed meanwhile. Must be called on
+ * the UI thread.
+ */
+class SchemeRouter {
+
+    private static final String LOG_TAG = "SchemeRouter";
+    private static final int MAX_RESOLVED = 32;
+    private static final String BROWSER_FALLBACK_URL = "browser_fallback_url";
+    private static final String INTENT_SCHEME = "intent";
+
+    /**
+     * Opens the links of one scheme.
+     */
+    interface Handler {
+        /**
+         * @param url           The link.
+         * @param uri           The parsed link.
+         * @param view          The WebView the link was followed in, or null if it is
+         *                      passed to open().
+         * @return              False to let the WebView load the link after all.
+         */
+        boolean handle(String url, Uri uri, WebView view);
+    }
+
+    // Loaded by the WebView itself
+    private static final String[] WEB_SCHEMES = { "http", "https", "file", "about", "data", "javascript", "blob", "content" };
+
+    private final Activity activity;
+    private final HashMap<String, Handler> handlers = new HashMap<String, Handler>();
+    private final LinkedHashMap<String, Boolean> resolved = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_RESOLVED;
+        }
+    };
+
+    private final Handler viewHandler = new Handler() {
+        public boolean handle(String url, Uri uri, WebView view) {
+            startActivity(new Intent(Intent.ACTION_VIEW, uri), url);
+            return true;
+        }
+    };
+
+    /**
+     * @param activity      The activity the other apps are started from.
+     */
+    SchemeRouter(Activity activity) {
+        this.activity = activity;
+
+        register("tel", new Handler() {
+            public boolean handle(String url, Uri uri, WebView view) {
+                startActivity(new Intent(Intent.ACTION_DIAL, uri), url);
+                return true;
+            }
+        });
+        register("geo", viewHandler);
+        register("mailto", viewHandler);
+        register("market", viewHandler);
+        register("sms", new Handler() {
+            public boolean handle(String url, Uri uri, WebView view) {
+                // sms:5551212?body=This is the message
+                Intent intent = new Intent(Intent.ACTION_VIEW);
+                String address;
+                int parmIndex = url.indexOf('?');
+                if (parmIndex == -1) {
+                    address = url.substring(4);
+                } else {
+                    address = url.substring(4, parmIndex);
+                    String query = uri.getQuery();
+                    if (query != null && query.startsWith("body=")) {
+                        intent.putExtra("sms_body", query.substring(5));
+                    }
+                }
+                intent.setData(Uri.parse("sms:" + address));
+                intent.putExtra("address", address);
+                intent.setType("vnd.android-dir/mms-sms");
+                startActivity(intent, url);
+                return true;
+            }
+        });
+        register(INTENT_SCHEME, new Handler() {
+            public boolean handle(String url, Uri uri, WebView view) {
+                String fallbackUrl = openIntent(url);
+                if (fallbackUrl != null && view != null) {
+                    view.loadUrl(fallbackUrl);
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Handle the links of a scheme, replacing the current handler if any.
+     *
+     * @param scheme        The scheme, lower case, without ':'.
+     * @param handler       The handler.
+     */
+    void register(String scheme, Handler handler) {
+        handlers.put(scheme, handler);
+    }
+
+    /**
+     * Open a link in another app if it is not for the WebView.
+     *
+     * @param url           The link.
+     * @param view          The WebView it was followed in, or null if it is passed to open().
+     * @return              True if the WebView must not load it.
+     */
+    boolean route(String url, WebView view) {
+        if (!isExternal(url)) {
+            return false;
+        }
+        Uri uri = Uri.parse(url);
+        Handler handler = handlers.get(uri.getScheme().toLowerCase(Locale.ENGLISH));
+        if (handler != null) {
+            return handler.handle(url, uri, view);
+        }
+        // An app deep link, e.g. a store app
+        Intent intent = new Intent(Intent.ACTION_VIEW, uri);
+        intent.addCategory(Intent.CATEGORY_BROWSABLE);
+        if (canResolve(intent)) {
+            startActivity(intent, url);
+        } else {
+            // The WebView could only show an error page
+            Log.d(LOG_TAG, "No app for " + url);
+        }
+        return true;
+    }
+
+    /**
+     * Open a link passed to open() in another app if it is not for the WebView.
+     *
+     * @param url           The link.
+     * @return              The URL to load in the browser: the link itself, the
+     *                      browser_fallback_url of an intent: link no app can open,
+     *                      or null if there is nothing to load.
+     */
+    String open(String url) {
+        String scheme = Uri.parse(url).getScheme();
+        if (scheme != null && INTENT_SCHEME.equals(scheme.toLowerCase(Locale.ENGLISH))) {
+            return openIntent(url);
+        }
+        return route(url, null) ? null : url;
+    }
+
+    /**
+     * @param url           The link.
+     * @return              Whether route() would keep the WebView from loading it.
+     */
+    boolean isExternal(String url) {
+        String scheme = Uri.parse(url).getScheme();
+        if (scheme == null) {
+            return false;
+        }
+        scheme = scheme.toLowerCase(Locale.ENGLISH);
+        for (String webScheme : WEB_SCHEMES) {
+            if (webScheme.equals(scheme)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forget which links apps can open, e.g. when an app may have been installed.
+     */
+    void clear() {
+        resolved.clear();
+    }
+
+    /**
+     * Open an intent: URI, as Chrome does: in the app it names when one can
+     * handle it, otherwise at its browser_fallback_url, otherwise in the store
+     * page of its package.
+     *
+     * @return              The browser_fallback_url to load, or null if there is nothing to load.
+     */
+    @SuppressLint("NewApi")
+    private String openIntent(String url) {
+        Intent intent;
+        try {
+            intent = Intent.parseUri(url, Intent.URI_INTENT_SCHEME);
+        } catch (URISyntaxException e) {
+            Log.d(LOG_TAG, "Bad intent URI " + url);
+            return null;
+        }
+        // Pages must not be able to start components that are not meant to be opened from a link
+        intent.addCategory(Intent.CATEGORY_BROWSABLE);
+        intent.setComponent(null);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            intent.setSelector(null);
+        }
+
+        if (canResolve(intent)) {
+            startActivity(intent, url);
+            return null;
+        }
+        String fallbackUrl = intent.getStringExtra(BROWSER_FALLBACK_URL);
+        if (fallbackUrl != null && (fallbackUrl.startsWith("http://") || fallbackUrl.startsWith("https://"))) {
+            return fallbackUrl;
+        }
+        String packageName = intent.getPackage();
+        if (packageName != null) {
+            startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse("market://details?id=" + packageName)), url);
+        }
+        return null;
+    }
+
+    /**
+     * @return whether an installed app can open the intent, asking the PackageManager
+     *         only once per action, scheme, host and package
+     */
+    private boolean canResolve(Intent intent) {
+        Uri data = intent.getData();
+        String key = intent.getAction() + " " + (data == null ? "" : data.getScheme() + "://" + data.getHost()) + " " + intent.getPackage();
+        Boolean canResolve = resolved.get(key);
+        if (canResolve == null) {
+            PackageManager packageManager = activity.getPackageManager();
+            canResolve = Boolean.valueOf(packageManager.resolveActivity(intent, PackageManager.MATCH_DEFAULT_ONLY) != null);
+            resolved.put(key, canResolve);
+        }
+        return canResolve.booleanValue();
+    }
+
+    private void startActivity(Intent intent, String url) {
+        try {
+            activity.startActivity(intent);
+        } catch (android.content.ActivityNotFoundException e) {
+            LOG.e(LOG_TAG, "Error with " + url + ": " + e.toString());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+
+/**
+ * Runs JavaScript in a browser window.
+ *
+ * From KitKat on, scripts go through evaluateJavascript(), which does not blur
+ * the focused element and can hand the result back directly. Older WebViews
+ * only have javascript: URLs, which return nothing. Must be called on the UI
+ * thread.
+ */
+final class ScriptExecutor {
+
+    /**
+     * Receives the value of an evaluated script, on the UI thread.
+     */
+    interface ResultCallback {
+        /**
+         * @param json      The JSON encoding of the value, "null" for undefined.
+         */
+        void onResult(String json);
+    }
+
+    private ScriptExecutor() {
+    }
+
+    /**
+     * @return              Whether this WebView can return script results.
+     */
+    static boolean canReturnResults() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * @return              Whether scripts can be run while a page is loading. A
+     *                      javascript: URL would interrupt the load.
+     */
+    static boolean canRunWhileLoading() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * Run a script, ignoring its value.
+     *
+     * @param webView       The WebView to run it in.
+     * @param script        The JavaScript source.
+     */
+    @SuppressLint("NewApi")
+    static void execute(WebView webView, String script) {
+        if (canReturnResults()) {
+            webView.evaluateJavascript(script, null);
+        } else {
+            // This action will have the side-effect of blurring the currently focused element
+            webView.loadUrl("javascript:" + script);
+        }
+    }
+
+    /**
+     * Run a script and get its value back.
+     *
+     * @param webView       The WebView to run it in.
+     * @param script        The JavaScript source.
+     * @param callback      Receives the value.
+     * @return              False, without running anything, if this WebView can not
+     *                      return results. The caller then has to fall back to a
+     *                      JavaScript interface.
+     */
+    @SuppressLint("NewApi")
+    static boolean evaluate(WebView webView, String script, final ResultCallback callback) {
+        if (!canReturnResults()) {
+            return false;
+        }
+        webView.evaluateJavascript(script, new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(String value) {
+                callback.onResult(value);
+            }
+        });
+        return true;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.webkit.JavascriptInterface;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Carries the results of injected scripts back to their callbacks.
+ *
+ * Registered as a JavaScript interface on every browser WebView. Each injection
+ * with a callback gets a random id, which the injected script posts its result
+ * with. Results are sent as a JSON encoded array, split in chunks so that large
+ * values do not go through the bridge as a single string.
+ *
+ * The JavaScript methods run on the WebView bridge thread, so results are
+ * parsed there and never on the UI thread. This replaces the prompt() bridge
+ * handled by InAppChromeClient, which is only kept for pages that still use it.
+ */
+class ScriptResultChannel {
+
+    static final String INTERFACE_NAME = "_cordovaInAppBrowserResults";
+
+    // Characters per chunk posted by the injected scripts
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final String LOG_TAG = "ScriptResultChannel";
+
+    // Scripts that never post (e.g. the page navigated away) are forgotten past this
+    private static final int MAX_PENDING = 64;
+
+    // Wrappers for injectDeferredObject(), posting the value of the source (or nothing) once it has run
+    static final ScriptTemplate SCRIPT_CODE = new ScriptTemplate("(function(r, c, id) { for (var i = 0, n = Math.max(1, Math.ceil(r.length / " + CHUNK_SIZE + ")); i < n; i++) { c.post(id, i, n, r.substr(i * " + CHUNK_SIZE + ", " + CHUNK_SIZE + ")); } })(JSON.stringify([eval(%s)]), window." + INTERFACE_NAME + ", '%s')");
+    static final ScriptTemplate SCRIPT_FILE = new ScriptTemplate("(function(d, id) { var c = d.createElement('script'); c.src = %s; c.onload = function() { window." + INTERFACE_NAME + ".post(id, 0, 1, ''); }; d.body.appendChild(c); })(document, '%s')");
+    static final ScriptTemplate STYLE_CODE = new ScriptTemplate("(function(d, id) { var c = d.createElement('style'); c.innerHTML = %s; d.body.appendChild(c); window." + INTERFACE_NAME + ".post(id, 0, 1, ''); })(document, '%s')");
+    static final ScriptTemplate STYLE_FILE = new ScriptTemplate("(function(d, id) { var c = d.createElement('link'); c.rel='stylesheet'; c.type='text/css'; c.href = %s; d.head.appendChild(c); window." + INTERFACE_NAME + ".post(id, 0, 1, ''); })(document, '%s')");
+
+    private final SecureRandom random = new SecureRandom();
+    private final LinkedHashMap<String, PendingResult> pending = new LinkedHashMap<String, PendingResult>();
+
+    private static class PendingResult {
+        final CallbackContext callbackContext;
+        String[] chunks;
+        int received;
+
+        PendingResult(CallbackContext callbackContext) {
+            this.callbackContext = callbackContext;
+        }
+    }
+
+    /**
+     * Receive one chunk of a result. Called by the injected scripts.
+     *
+     * @param id        The id the script was injected with.
+     * @param index     The position of this chunk.
+     * @param count     The number of chunks of the result.
+     * @param chunk     Part of the JSON encoded result, empty if the script has no value.
+     */
+    @JavascriptInterface
+    public void post(String id, int index, int count, String chunk) {
+        PendingResult result;
+        String json;
+        synchronized (this) {
+            result = pending.get(id);
+            if (result == null || count < 1 || index < 0 || index >= count) {
+                LOG.w(LOG_TAG, "Ignoring unexpected script result");
+                return;
+            }
+            if (result.chunks == null) {
+                result.chunks = new String[count];
+            } else if (result.chunks.length != count || result.chunks[index] != null) {
+                LOG.w(LOG_TAG, "Ignoring unexpected script result");
+                return;
+            }
+            result.chunks[index] = chunk == null ? "" : chunk;
+            result.received++;
+            if (result.received < count) {
+                return;
+            }
+            pending.remove(id);
+            if (count == 1) {
+                json = result.chunks[0];
+            } else {
+                StringBuilder sb = new StringBuilder();
+                for (String part : result.chunks) {
+                    sb.append(part);
+                }
+                json = sb.toString();
+            }
+        }
+
+        PluginResult scriptResult;
+        if (json.length() == 0) {
+            scriptResult = new PluginResult(PluginResult.Status.OK, new JSONArray());
+        } else {
+            try {
+                scriptResult = new PluginResult(PluginResult.Status.OK, new JSONArray(json));
+            } catch (JSONException e) {
+                scriptResult = new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+            }
+        }
+        result.callbackContext.sendPluginResult(scriptResult);
+    }
+
+    /**
+     * Expect a result for a callback.
+     *
+     * @param callbackContext   The callback to send the result to.
+     * @return                  The id the injected script has to post the result with.
+     */
+    synchronized String register(CallbackContext callbackContext) {
+        String id = Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+        if (pending.size() >= MAX_PENDING) {
+            Iterator<Map.Entry<String, PendingResult>> eldest = pending.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        pending.put(id, new PendingResult(callbackContext));
+        return id;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A JavaScript wrapper for injected scripts and styles, split once at its
+ * placeholders instead of being run through String.format on every injection.
+ *
+ * The first "%s" receives the source, as a JSON string literal. An optional
+ * second "%s" receives a callback id, inserted as is. The same sources are
+ * injected page after page, so the wrapped source (everything up to the id) is
+ * kept in a small LRU cache per template.
+ */
+final class ScriptTemplate {
+
+    private static final int CACHE_SIZE = 32;
+    // Larger sources are wrapped every time rather than kept around
+    private static final int MAX_CACHED_SOURCE_LENGTH = 16 * 1024;
+
+    private final String prefix;
+    private final String middle;
+    private final String suffix;
+
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<String, String>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @param wrapper       The wrapper source, with one or two "%s" placeholders.
+     */
+    ScriptTemplate(String wrapper) {
+        int source = wrapper.indexOf("%s");
+        if (source < 0) {
+            throw new IllegalArgumentException("No source placeholder in " + wrapper);
+        }
+        int id = wrapper.indexOf("%s", source + 2);
+        prefix = wrapper.substring(0, source);
+        if (id < 0) {
+            middle = wrapper.substring(source + 2);
+            suffix = null;
+        } else {
+            middle = wrapper.substring(source + 2, id);
+            suffix = wrapper.substring(id + 2);
+        }
+    }
+
+    /**
+     * Wrap a source.
+     *
+     * @param source        The script or style source, or the URL of a file.
+     * @param callbackId    The id for the callback placeholder, ignored if there is none.
+     * @return              The script to run.
+     */
+    String apply(String source, String callbackId) {
+        String wrapped = null;
+        boolean cacheable = source.length() <= MAX_CACHED_SOURCE_LENGTH;
+        if (cacheable) {
+            synchronized (cache) {
+                wrapped = cache.get(source);
+            }
+        }
+        if (wrapped == null) {
+            StringBuilder sb = new StringBuilder(prefix.length() + source.length() + 16 + middle.length());
+            sb.append(prefix);
+            appendQuoted(sb, source);
+            sb.append(middle);
+            wrapped = sb.toString();
+            if (cacheable) {
+                synchronized (cache) {
+                    cache.put(source, wrapped);
+                }
+            }
+        }
+        if (suffix == null) {
+            return wrapped;
+        }
+        return new StringBuilder(wrapped.length() + callbackId.length() + suffix.length())
+                .append(wrapped).append(callbackId).append(suffix).toString();
+    }
+
+    /**
+     * Append a string as a JSON string literal, which is also a valid
+     * JavaScript string literal.
+     *
+     * @param sb            Where to append it.
+     * @param value         The string to quote.
+     */
+    static void appendQuoted(StringBuilder sb, String value) {
+        sb.append('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String escaped;
+            switch (c) {
+                case '"':
+                    escaped = "\\\"";
+                    break;
+                case '\\':
+                    escaped = "\\\\";
+                    break;
+                case '\n':
+                    escaped = "\\n";
+                    break;
+                case '\r':
+                    escaped = "\\r";
+                    break;
+                case '\t':
+                    escaped = "\\t";
+                    break;
+                case '\b':
+                    escaped = "\\b";
+                    break;
+                case '\f':
+                    escaped = "\\f";
+                    break;
+                case '\u2028':
+                    // Line terminators in JavaScript, though not in JSON
+                    escaped = "\\u2028";
+                    break;
+                case '\u2029':
+                    escaped = "\\u2029";
+                    break;
+                default:
+                    if (c >= 0x20) {
+                        continue;
+                    }
+                    escaped = String.format("\\u%04x", (int) c);
+                    break;
+            }
+            sb.append(value, start, i).append(escaped);
+            start = i + 1;
+        }
+        sb.append(value, start, length);
+        sb.append('"');
+    }
+}
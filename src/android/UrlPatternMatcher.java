@@ -0,0 +1,367 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * URL patterns in the Adblock Plus filter syntax: "*" matches anything, "^" a
+ * separator character or the end of the URL, a leading "|" anchors at the
+ * start of the URL, a trailing "|" at its end, and a leading "||" at the start
+ * of the host or of one of its labels. Matching ignores case.
+ *
+ * Scanning every URL with every pattern would be too slow for thousands of
+ * patterns, so the longest literal part of each pattern is put in an
+ * Aho-Corasick automaton. A URL is scanned once, and only the patterns whose
+ * literal part is found in it are checked in full. Call compile() after adding
+ * the patterns; match() does not allocate and is safe from any thread.
+ */
+class UrlPatternMatcher {
+
+    // Literal parts shorter than this would be found in too many URLs
+    private static final int MIN_KEY_LENGTH = 3;
+
+    private static final int ANCHOR_NONE = 0;
+    private static final int ANCHOR_START = 1;
+    private static final int ANCHOR_HOST = 2;
+
+    private final ArrayList<String> bodies = new ArrayList<String>();
+    private final ArrayList<int[]> attributes = new ArrayList<int[]>();
+
+    // Patterns without a long enough literal part, always checked
+    private int[] unkeyed;
+
+    // The automaton, transitions sorted by character for each state
+    private int[] edgeStart;
+    private char[] edgeChars;
+    private int[] edgeTargets;
+    private int[] fail;
+    // Next state on the failure chain with patterns, or -1
+    private int[] outputLink;
+    private int[] outputStart;
+    private int[] outputs;
+
+    private String[] patternBodies;
+    private int[] patternAnchors;
+    private boolean[] patternEndAnchors;
+    private int[] patternFlags;
+
+    /**
+     * @param pattern       The pattern, without filter options.
+     * @param flags         Flags to return when it matches, not 0.
+     */
+    void add(String pattern, int flags) {
+        int anchor = ANCHOR_NONE;
+        if (pattern.startsWith("||")) {
+            anchor = ANCHOR_HOST;
+            pattern = pattern.substring(2);
+        } else if (pattern.startsWith("|")) {
+            anchor = ANCHOR_START;
+            pattern = pattern.substring(1);
+        }
+        int endAnchor = 0;
+        if (pattern.endsWith("|")) {
+            endAnchor = 1;
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        bodies.add(pattern.toLowerCase(Locale.ENGLISH));
+        attributes.add(new int[] { anchor, endAnchor, flags });
+    }
+
+    /**
+     * @return the number of patterns
+     */
+    int size() {
+        return bodies.size();
+    }
+
+    /**
+     * Build the automaton. No patterns can be added afterwards.
+     */
+    void compile() {
+        int count = bodies.size();
+        patternBodies = bodies.toArray(new String[count]);
+        patternAnchors = new int[count];
+        patternEndAnchors = new boolean[count];
+        patternFlags = new int[count];
+
+        ArrayList<HashMap<Character, Integer>> gotos = new ArrayList<HashMap<Character, Integer>>();
+        ArrayList<ArrayList<Integer>> stateOutputs = new ArrayList<ArrayList<Integer>>();
+        gotos.add(new HashMap<Character, Integer>());
+        stateOutputs.add(null);
+        ArrayList<Integer> always = new ArrayList<Integer>();
+
+        for (int i = 0; i < count; i++) {
+            int[] attrs = attributes.get(i);
+            patternAnchors[i] = attrs[0];
+            patternEndAnchors[i] = attrs[1] != 0;
+            patternFlags[i] = attrs[2];
+
+            String key = longestLiteral(patternBodies[i]);
+            if (key.length() < MIN_KEY_LENGTH) {
+                always.add(i);
+                continue;
+            }
+            int state = 0;
+            for (int j = 0; j < key.length(); j++) {
+                Character c = Character.valueOf(key.charAt(j));
+                Integer next = gotos.get(state).get(c);
+                if (next == null) {
+                    next = gotos.size();
+                    gotos.add(new HashMap<Character, Integer>());
+                    stateOutputs.add(null);
+                    gotos.get(state).put(c, next);
+                }
+                state = next;
+            }
+            if (stateOutputs.get(state) == null) {
+                stateOutputs.set(state, new ArrayList<Integer>());
+            }
+            stateOutputs.get(state).add(i);
+        }
+        bodies.clear();
+        attributes.clear();
+
+        unkeyed = toArray(always);
+
+        int states = gotos.size();
+        edgeStart = new int[states + 1];
+        int edges = 0;
+        for (int s = 0; s < states; s++) {
+            edgeStart[s] = edges;
+            edges += gotos.get(s).size();
+        }
+        edgeStart[states] = edges;
+        edgeChars = new char[edges];
+        edgeTargets = new int[edges];
+        for (int s = 0; s < states; s++) {
+            Character[] chars = gotos.get(s).keySet().toArray(new Character[0]);
+            Arrays.sort(chars);
+            for (int k = 0; k < chars.length; k++) {
+                edgeChars[edgeStart[s] + k] = chars[k].charValue();
+                edgeTargets[edgeStart[s] + k] = gotos.get(s).get(chars[k]).intValue();
+            }
+        }
+
+        outputStart = new int[states + 1];
+        int outputCount = 0;
+        for (int s = 0; s < states; s++) {
+            outputStart[s] = outputCount;
+            if (stateOutputs.get(s) != null) {
+                outputCount += stateOutputs.get(s).size();
+            }
+        }
+        outputStart[states] = outputCount;
+        outputs = new int[outputCount];
+        for (int s = 0; s < states; s++) {
+            ArrayList<Integer> list = stateOutputs.get(s);
+            if (list != null) {
+                for (int k = 0; k < list.size(); k++) {
+                    outputs[outputStart[s] + k] = list.get(k).intValue();
+                }
+            }
+        }
+
+        // Failure links, breadth first so that shallower states are done first
+        fail = new int[states];
+        outputLink = new int[states];
+        Arrays.fill(outputLink, -1);
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            fail[edgeTargets[e]] = 0;
+            queue[tail++] = edgeTargets[e];
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                int target = edgeTargets[e];
+                int f = fail[state];
+                int next;
+                while ((next = transition(f, edgeChars[e])) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[target] = next < 0 ? 0 : next;
+                int link = fail[target];
+                outputLink[target] = hasOutputs(link) ? link : outputLink[link];
+                queue[tail++] = target;
+            }
+        }
+    }
+
+    /**
+     * @param url           The URL.
+     * @param hostStart     Where its host starts.
+     * @param hostEnd       Where its host ends.
+     * @param ignoredFlags  Patterns with any of these flags are skipped.
+     * @return              The flags of every matching pattern, 0 if none match.
+     */
+    int match(String url, int hostStart, int hostEnd, int ignoredFlags) {
+        int result = 0;
+        for (int i = 0; i < unkeyed.length; i++) {
+            result |= matchPattern(unkeyed[i], url, hostStart, hostEnd, ignoredFlags);
+        }
+        int state = 0;
+        int length = url.length();
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(url.charAt(i));
+            int next;
+            while ((next = transition(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+            for (int s = hasOutputs(state) ? state : outputLink[state]; s >= 0; s = outputLink[s]) {
+                for (int o = outputStart[s]; o < outputStart[s + 1]; o++) {
+                    result |= matchPattern(outputs[o], url, hostStart, hostEnd, ignoredFlags);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int matchPattern(int pattern, String url, int hostStart, int hostEnd, int ignoredFlags) {
+        int flags = patternFlags[pattern];
+        if ((flags & ignoredFlags) != 0) {
+            return 0;
+        }
+        String body = patternBodies[pattern];
+        boolean endAnchor = patternEndAnchors[pattern];
+        switch (patternAnchors[pattern]) {
+            case ANCHOR_START:
+                return matches(url, 0, body, endAnchor) ? flags : 0;
+            case ANCHOR_HOST:
+                if (hostStart < 0) {
+                    return 0;
+                }
+                for (int i = hostStart; i < hostEnd; i++) {
+                    if ((i == hostStart || url.charAt(i - 1) == '.') && matches(url, i, body, endAnchor)) {
+                        return flags;
+                    }
+                }
+                return 0;
+            default:
+                for (int i = 0; i < url.length(); i++) {
+                    if (matches(url, i, body, endAnchor)) {
+                        return flags;
+                    }
+                }
+                return 0;
+        }
+    }
+
+    /**
+     * @return whether the pattern matches the url from start on, up to its end if endAnchor
+     */
+    private static boolean matches(String url, int start, String pattern, boolean endAnchor) {
+        int length = url.length();
+        int u = start;
+        int p = 0;
+        // Where to resume after the last "*" when what follows it does not match
+        int starPattern = -1;
+        int starUrl = -1;
+        while (true) {
+            if (p == pattern.length()) {
+                if (!endAnchor || u == length) {
+                    return true;
+                }
+            } else {
+                char pc = pattern.charAt(p);
+                if (pc == '*') {
+                    starPattern = ++p;
+                    starUrl = u;
+                    continue;
+                }
+                if (u < length && charMatches(pc, url.charAt(u))) {
+                    p++;
+                    u++;
+                    continue;
+                }
+                if (u == length && pc == '^') {
+                    p++;
+                    continue;
+                }
+            }
+            if (starPattern < 0 || starUrl >= length) {
+                return false;
+            }
+            p = starPattern;
+            u = ++starUrl;
+        }
+    }
+
+    private static boolean charMatches(char pc, char uc) {
+        if (pc == '^') {
+            return isSeparator(uc);
+        }
+        return pc == Character.toLowerCase(uc);
+    }
+
+    private static boolean isSeparator(char c) {
+        return !(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == '%');
+    }
+
+    private int transition(int state, char c) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = edgeChars[mid];
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private boolean hasOutputs(int state) {
+        return outputStart[state] < outputStart[state + 1];
+    }
+
+    private static String longestLiteral(String pattern) {
+        int bestStart = 0;
+        int bestLength = 0;
+        int start = 0;
+        for (int i = 0; i <= pattern.length(); i++) {
+            if (i == pattern.length() || pattern.charAt(i) == '*' || pattern.charAt(i) == '^') {
+                if (i - start > bestLength) {
+                    bestStart = start;
+                    bestLength = i - start;
+                }
+                start = i + 1;
+            }
+        }
+        return pattern.substring(bestStart, bestStart + bestLength);
+    }
+
+    private static int[] toArray(ArrayList<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i).intValue();
+        }
+        return array;
+    }
+}
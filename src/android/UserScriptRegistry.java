@@ -0,0 +1,200 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * Scripts and styles registered with addUserScript/addUserStyle, to be run on
+ * every page the browser loads without going through the Cordova bridge.
+ *
+ * Each entry is wrapped once, when it is added. The wrapper makes sure it runs
+ * at most once per document. Document start entries are run when the page
+ * starts loading, guarded so that they only run in the new document: WebView
+ * may still be showing the previous one then. When the guard stops them, they
+ * run when the page has finished loading instead.
+ *
+ * Entries are added from the plugin thread and read on the UI thread.
+ */
+class UserScriptRegistry {
+
+    static final String DOCUMENT_START = "documentStart";
+    static final String DOCUMENT_END = "documentEnd";
+
+    private static final String APPLIED = "window._cordovaInAppBrowserUserScripts";
+
+    // The document may have neither a head nor a body yet at document start
+    private static final ScriptTemplate SCRIPT_FILE = new ScriptTemplate("(function(d) { var c = d.createElement('script'); c.src = %s; (d.head || d.documentElement).appendChild(c); })(document);");
+    private static final ScriptTemplate STYLE_CODE = new ScriptTemplate("(function(d) { var c = d.createElement('style'); c.innerHTML = %s; (d.head || d.documentElement).appendChild(c); })(document);");
+    private static final ScriptTemplate STYLE_FILE = new ScriptTemplate("(function(d) { var c = d.createElement('link'); c.rel='stylesheet'; c.type='text/css'; c.href = %s; (d.head || d.documentElement).appendChild(c); })(document);");
+
+    private static class UserScript {
+        final int id;
+        final String script;
+        final boolean atDocumentStart;
+        final Pattern[] patterns;
+
+        UserScript(int id, String script, boolean atDocumentStart, Pattern[] patterns) {
+            this.id = id;
+            this.script = script;
+            this.atDocumentStart = atDocumentStart;
+            this.patterns = patterns;
+        }
+
+        boolean matches(String url) {
+            if (patterns.length == 0) {
+                return true;
+            }
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(url).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Replaced on every change, so that pages can read it without locking
+    private volatile UserScript[] scripts = new UserScript[0];
+    private int nextId = 1;
+
+    /**
+     * Register a script or style.
+     *
+     * @param isStyle           True for CSS, false for JavaScript.
+     * @param isFile            True if source is the URL of a file, false if it is the code itself.
+     * @param source            The code or file URL.
+     * @param injectionTime     DOCUMENT_START or DOCUMENT_END.
+     * @param urlPatterns       Pages to run it on, "*" matching any characters. Empty for every page.
+     * @return                  The id to remove it with.
+     */
+    synchronized int add(boolean isStyle, boolean isFile, String source, String injectionTime, String[] urlPatterns) {
+        int id = nextId++;
+        String body;
+        if (isStyle) {
+            body = (isFile ? STYLE_FILE : STYLE_CODE).apply(source, null);
+        } else if (isFile) {
+            body = SCRIPT_FILE.apply(source, null);
+        } else {
+            body = source;
+        }
+        String script = "(function(a) { if (a[" + id + "]) { return; } a[" + id + "] = true;\n" + body + "\n})(" + APPLIED + " = " + APPLIED + " || {});";
+
+        Pattern[] patterns = new Pattern[urlPatterns.length];
+        for (int i = 0; i < urlPatterns.length; i++) {
+            patterns[i] = compilePattern(urlPatterns[i]);
+        }
+
+        UserScript[] current = scripts;
+        UserScript[] updated = new UserScript[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = new UserScript(id, script, DOCUMENT_START.equals(injectionTime), patterns);
+        scripts = updated;
+        return id;
+    }
+
+    /**
+     * @param id        The id returned by add().
+     * @return          Whether there was such an entry.
+     */
+    synchronized boolean remove(int id) {
+        UserScript[] current = scripts;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].id == id) {
+                UserScript[] updated = new UserScript[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                scripts = updated;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove every entry.
+     */
+    synchronized void clear() {
+        scripts = new UserScript[0];
+    }
+
+    /**
+     * Get the script running the document start entries of a page, for when it
+     * starts loading. It only runs them in a document that is still loading at
+     * that URL, and evaluates to whether it did.
+     *
+     * @param url               The URL of the page that started loading.
+     * @return                  The script, or null if no document start entry matches.
+     */
+    String documentStartScript(String url) {
+        StringBuilder sb = null;
+        for (UserScript userScript : scripts) {
+            if (userScript.atDocumentStart && userScript.matches(url)) {
+                if (sb == null) {
+                    sb = new StringBuilder("(function() { if (document.readyState !== 'loading' || location.href !== ");
+                    ScriptTemplate.appendQuoted(sb, url);
+                    sb.append(") { return false; }\n");
+                }
+                sb.append(userScript.script).append('\n');
+            }
+        }
+        return sb == null ? null : sb.append("return true; })();").toString();
+    }
+
+    /**
+     * Get the scripts to run once a page has finished loading.
+     *
+     * @param url                   The page URL.
+     * @param withDocumentStart     Whether to include the document start entries,
+     *                              when the documentStartScript() did not run them.
+     * @return                      The scripts, in the order they were added.
+     */
+    ArrayList<String> documentEndScripts(String url, boolean withDocumentStart) {
+        UserScript[] current = scripts;
+        ArrayList<String> result = new ArrayList<String>(current.length);
+        for (UserScript userScript : current) {
+            if ((withDocumentStart || !userScript.atDocumentStart) && userScript.matches(url)) {
+                result.add(userScript.script);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compile a URL pattern such as "https://*.example.com/*", where "*" matches
+     * any characters, into a regular expression.
+     */
+    private static Pattern compilePattern(String urlPattern) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        int star;
+        while ((star = urlPattern.indexOf('*', start)) >= 0) {
+            if (star > start) {
+                regex.append(Pattern.quote(urlPattern.substring(start, star)));
+            }
+            regex.append(".*");
+            start = star + 1;
+        }
+        if (start < urlPattern.length()) {
+            regex.append(Pattern.quote(urlPattern.substring(start)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of pre-built browser windows, so that opening the browser does
+ * not have to build a dialog and a WebView every time.
+ *
+ * The pool is filled while the UI thread is idle and windows are handed back
+ * to it when the browser is closed. All methods must be called on the UI thread.
+ */
+class WebViewPool {
+
+    private static final String LOG_TAG = "WebViewPool";
+
+    /**
+     * Builds new windows for the pool.
+     */
+    interface Factory {
+        InAppBrowserWindow createWindow();
+    }
+
+    private final ArrayDeque<InAppBrowserWindow> windows = new ArrayDeque<InAppBrowserWindow>();
+    private final Factory factory;
+    private final int maxSize;
+    private boolean fillScheduled = false;
+    private boolean trimmed = false;
+
+    // Drops a pooled window whose renderer has gone away
+    private final InAppBrowserWindow.RendererGoneListener rendererGoneListener = new InAppBrowserWindow.RendererGoneListener() {
+        @Override
+        public void onRendererGone(InAppBrowserWindow window) {
+            windows.remove(window);
+        }
+    };
+
+    WebViewPool(Factory factory, int maxSize) {
+        this.factory = factory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Take a window out of the pool.
+     *
+     * @return a ready to use window, or null if the pool is empty
+     */
+    InAppBrowserWindow acquire() {
+        InAppBrowserWindow window = windows.pollFirst();
+        if (window != null) {
+            window.rendererGoneListener = null;
+        }
+        // The browser is being used again, so it is worth refilling
+        refill();
+        return window;
+    }
+
+    /**
+     * @return whether release() would keep a window rather than destroy it
+     */
+    boolean hasRoom() {
+        return !trimmed && windows.size() < maxSize;
+    }
+
+    /**
+     * Hand a window back to the pool.
+     *
+     * @param window a window whose WebView has been navigated to about:blank
+     * @return true if the window was kept, false if it was destroyed
+     */
+    boolean release(InAppBrowserWindow window) {
+        if (!hasRoom()) {
+            window.destroy();
+            return false;
+        }
+        window.reset();
+        window.rendererGoneListener = rendererGoneListener;
+        windows.addLast(window);
+        return true;
+    }
+
+    /**
+     * Build windows until the pool is full, one per idle pass of the UI thread.
+     */
+    void scheduleFill() {
+        if (fillScheduled || trimmed || windows.size() >= maxSize) {
+            return;
+        }
+        fillScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (trimmed || windows.size() >= maxSize) {
+                    fillScheduled = false;
+                    return false;
+                }
+                InAppBrowserWindow window = factory.createWindow();
+                window.rendererGoneListener = rendererGoneListener;
+                windows.addLast(window);
+                Log.d(LOG_TAG, "warmed up window " + windows.size() + "/" + maxSize);
+                fillScheduled = windows.size() < maxSize;
+                return fillScheduled;
+            }
+        });
+    }
+
+    /**
+     * Fill the pool again after trim(), e.g. when the app comes back to the foreground.
+     */
+    void refill() {
+        trimmed = false;
+        scheduleFill();
+    }
+
+    /**
+     * Destroy every pooled window and stop refilling until the pool is used again,
+     * or refill() is called.
+     * Called when the system is running low on memory.
+     *
+     * @return              How many windows were destroyed.
+     */
+    int trim() {
+        trimmed = true;
+        return clear();
+    }
+
+    /**
+     * Destroy every pooled window.
+     *
+     * @return              How many windows were destroyed.
+     */
+    int clear() {
+        int count = 0;
+        InAppBrowserWindow window;
+        while ((window = windows.pollFirst()) != null) {
+            window.destroy();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing the features string of open(), the parseFeature() of the original
+ * plugin, both for a string seen before and for a new one.
+ */
+@State(Scope.Thread)
+public class BrowserOptionsBenchmark {
+
+    private static final String FEATURES = "location=no,hidden=yes,zoom=no,hardwareback=yes,meliuzredirectinterface=yes,"
+            + "batchevents=yes,collapseredirects=yes,datasaver=auto,loadattempts=3,closebuttoncaption=Fechar";
+
+    // More distinct strings than BrowserOptions keeps, so that every parse misses
+    private final String[] uncached = new String[64];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < uncached.length; i++) {
+            uncached[i] = FEATURES + ",retrydelay=" + i;
+        }
+    }
+
+    @Benchmark
+    public BrowserOptions parseCached() {
+        return BrowserOptions.parse(FEATURES);
+    }
+
+    @Benchmark
+    public BrowserOptions parseUncached() {
+        next = (next + 1) % uncached.length;
+        return BrowserOptions.parse(uncached[next]);
+    }
+}
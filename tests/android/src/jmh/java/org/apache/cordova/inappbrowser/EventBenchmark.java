@@ -0,0 +1,79 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.os.Looper;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Building the events a page load fires, as the browser client and
+ * BrowserSession.sendUpdate() do, delivered one by one or through the
+ * EventBatcher of batchevents=yes.
+ */
+@State(Scope.Thread)
+public class EventBenchmark {
+
+    private static final String[] URLS = {
+        "https://www.meliuz.com.br/desconto/loja",
+        "https://tracking.example.net/click?id=123&redirect=1",
+        "https://www.store.com.br/?utm_source=meliuz",
+        "https://www.store.com.br/",
+    };
+
+    private Blackhole blackhole;
+
+    private final EventBatcher batcher = new EventBatcher(new EventBatcher.Delivery() {
+        public void deliver(JSONArray events) {
+            blackhole.consume(events.toString());
+        }
+    }, 50, true);
+
+    private static JSONObject event(String type, String url) {
+        JSONObject obj = new JSONObject();
+        obj.put("type", type);
+        obj.put("url", url);
+        return obj;
+    }
+
+    @Benchmark
+    public void oneResultPerEvent(Blackhole blackhole) {
+        for (String url : URLS) {
+            blackhole.consume(event("loadstart", url).toString());
+        }
+        blackhole.consume(event("loadstop", URLS[URLS.length - 1]).toString());
+    }
+
+    @Benchmark
+    public void batched(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        for (String url : URLS) {
+            batcher.add(event("loadstart", url));
+        }
+        batcher.add(event("loadstop", URLS[URLS.length - 1]));
+        batcher.flush();
+        // Drop the timer flush the first event posted
+        Looper.getMainLooper().runPending();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.webkit.JsPromptResult;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaResourceApi;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Receiving the result of an injected script: the chunks are joined and parsed
+ * into the plugin result. onJsPrompt is the baseline, the prompt() bridge of
+ * InAppChromeClient it replaces, which gets the whole value at once.
+ */
+@State(Scope.Thread)
+public class ScriptResultBenchmark {
+
+    // A small value, and one split in several chunks
+    @Param({ "64", "262144" })
+    public int length;
+
+    private final ScriptResultChannel channel = new ScriptResultChannel();
+    private final CallbackContext callbackContext = new CallbackContext("InAppBrowser1");
+    private String[] chunks;
+    private String json;
+
+    // What the prompt() bridge sends its result to
+    private final CordovaWebView webView = new CordovaWebView() {
+        public void loadUrl(String url) {
+        }
+
+        public CordovaResourceApi getResourceApi() {
+            return null;
+        }
+
+        public void sendPluginResult(PluginResult result, String callbackId) {
+            lastResult = result;
+        }
+    };
+    private final InAppChromeClient chromeClient = new InAppChromeClient(webView);
+    private final JsPromptResult promptResult = new JsPromptResult();
+    private PluginResult lastResult;
+
+    @Setup
+    public void setUp() {
+        StringBuilder value = new StringBuilder(length);
+        while (value.length() < length) {
+            value.append("{\\\"price\\\":\\\"R$ 10,00\\\"}\\n");
+        }
+        json = "[\"" + value.substring(0, length) + "\"]";
+        int count = Math.max(1, (json.length() + ScriptResultChannel.CHUNK_SIZE - 1) / ScriptResultChannel.CHUNK_SIZE);
+        chunks = new String[count];
+        for (int i = 0; i < count; i++) {
+            chunks[i] = json.substring(i * ScriptResultChannel.CHUNK_SIZE, Math.min(json.length(), (i + 1) * ScriptResultChannel.CHUNK_SIZE));
+        }
+    }
+
+    @Benchmark
+    public Object receiveResult() {
+        String id = channel.register(callbackContext);
+        for (int i = 0; i < chunks.length; i++) {
+            channel.post(id, i, chunks.length, chunks[i]);
+        }
+        return callbackContext.getLastResult();
+    }
+
+    @Benchmark
+    public Object onJsPrompt() {
+        chromeClient.onJsPrompt(null, "https://www.meliuz.com.br/", json, "gap-iab://InAppBrowser1", promptResult);
+        return lastResult;
+    }
+}
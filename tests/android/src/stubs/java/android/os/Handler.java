@@ -0,0 +1,49 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package android.os;
+
+/**
+ * Stand-in for the Android class, for running the plugin code on the JVM.
+ * Posts to the queue of its Looper.
+ */
+public class Handler {
+    private final Looper looper;
+
+    public Handler(Looper looper) {
+        this.looper = looper;
+    }
+
+    public final boolean post(Runnable r) {
+        synchronized (looper.queue) {
+            looper.queue.add(r);
+        }
+        return true;
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis) {
+        return post(r);
+    }
+
+    public final void removeCallbacks(Runnable r) {
+        synchronized (looper.queue) {
+            while (looper.queue.remove(r)) {
+            }
+        }
+    }
+}
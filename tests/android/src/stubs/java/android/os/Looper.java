@@ -0,0 +1,55 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package android.os;
+
+import java.util.ArrayList;
+
+/**
+ * Stand-in for the Android class, for running the plugin code on the JVM.
+ * Nothing runs by itself: runPending() runs what handlers have posted.
+ */
+public final class Looper {
+    private static final Looper main = new Looper();
+
+    final ArrayList<Runnable> queue = new ArrayList<Runnable>();
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return main;
+    }
+
+    /**
+     * Not in Android: run everything posted so far, ignoring delays.
+     *
+     * @return              How many runnables ran.
+     */
+    public int runPending() {
+        ArrayList<Runnable> runnables;
+        synchronized (queue) {
+            runnables = new ArrayList<Runnable>(queue);
+            queue.clear();
+        }
+        for (Runnable runnable : runnables) {
+            runnable.run();
+        }
+        return runnables.size();
+    }
+}
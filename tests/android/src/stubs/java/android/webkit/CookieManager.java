@@ -0,0 +1,87 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package android.webkit;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stand-in for the Android class, for running the plugin code on the JVM.
+ * Keeps the name and value of each cookie by host, the attributes are ignored.
+ */
+public class CookieManager {
+    private static final CookieManager instance = new CookieManager();
+
+    private final Map<String, Map<String, String>> cookies = new LinkedHashMap<String, Map<String, String>>();
+
+    private CookieManager() {
+    }
+
+    public static CookieManager getInstance() {
+        return instance;
+    }
+
+    public synchronized String getCookie(String url) {
+        Map<String, String> hostCookies = cookies.get(host(url));
+        if (hostCookies == null || hostCookies.isEmpty()) {
+            return null;
+        }
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, String> cookie : hostCookies.entrySet()) {
+            if (header.length() > 0) {
+                header.append("; ");
+            }
+            header.append(cookie.getKey()).append('=').append(cookie.getValue());
+        }
+        return header.toString();
+    }
+
+    public synchronized void setCookie(String url, String value) {
+        String pair = value.split(";", 2)[0];
+        int equals = pair.indexOf('=');
+        if (equals <= 0) {
+            return;
+        }
+        String host = host(url);
+        Map<String, String> hostCookies = cookies.get(host);
+        if (hostCookies == null) {
+            hostCookies = new LinkedHashMap<String, String>();
+            cookies.put(host, hostCookies);
+        }
+        hostCookies.put(pair.substring(0, equals).trim(), pair.substring(equals + 1).trim());
+    }
+
+    public synchronized void removeAllCookie() {
+        cookies.clear();
+    }
+
+    public boolean acceptThirdPartyCookies(WebView webview) {
+        return false;
+    }
+
+    private static String host(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+}
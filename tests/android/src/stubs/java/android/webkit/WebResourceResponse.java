@@ -0,0 +1,72 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package android.webkit;
+
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Stand-in for the Android class, for running the plugin code on the JVM.
+ */
+public class WebResourceResponse {
+    private final String mimeType;
+    private final String encoding;
+    private final int statusCode;
+    private final String reasonPhrase;
+    private final Map<String, String> responseHeaders;
+    private InputStream data;
+
+    public WebResourceResponse(String mimeType, String encoding, int statusCode, String reasonPhrase,
+            Map<String, String> responseHeaders, InputStream data) {
+        this.mimeType = mimeType;
+        this.encoding = encoding;
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.responseHeaders = responseHeaders;
+        this.data = data;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReasonPhrase() {
+        return reasonPhrase;
+    }
+
+    public Map<String, String> getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    public InputStream getData() {
+        return data;
+    }
+
+    public void setData(InputStream data) {
+        this.data = data;
+    }
+}
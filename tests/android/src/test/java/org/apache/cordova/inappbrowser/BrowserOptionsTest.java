@@ -0,0 +1,98 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BrowserOptionsTest {
+
+    @Test
+    public void defaults() {
+        BrowserOptions options = BrowserOptions.parse(null);
+        assertSame(BrowserOptions.DEFAULTS, options);
+        assertSame(BrowserOptions.DEFAULTS, BrowserOptions.parse(""));
+        assertSame(BrowserOptions.DEFAULTS, BrowserOptions.parse("null"));
+        assertTrue(options.showZoomControls);
+        assertFalse(options.hidden);
+        assertTrue(options.hardwareBackButton);
+        assertEquals(DataSaverPolicy.Mode.NO, options.dataSaver);
+        assertEquals(4, options.loadAttempts);
+        assertEquals(1000, options.retryDelay);
+    }
+
+    @Test
+    public void parsesKeysAndValues() {
+        BrowserOptions options = BrowserOptions.parse(" ZOOM = no ,hidden=yes,loadattempts=2,retrydelay=250");
+        assertFalse(options.showZoomControls);
+        assertTrue(options.hidden);
+        assertEquals(2, options.loadAttempts);
+        assertEquals(250, options.retryDelay);
+    }
+
+    @Test
+    public void featureWithoutValueIsOn() {
+        BrowserOptions options = BrowserOptions.parse("hidden,datasaver");
+        assertTrue(options.hidden);
+        assertEquals(DataSaverPolicy.Mode.YES, options.dataSaver);
+    }
+
+    @Test
+    public void anythingButNoIsOn() {
+        assertTrue(BrowserOptions.parse("hidden=true").hidden);
+        assertFalse(BrowserOptions.parse("hidden=NO").hidden);
+    }
+
+    @Test
+    public void invalidValuesFallBackToDefaults() {
+        BrowserOptions options = BrowserOptions.parse("loadattempts=many,datasaver=sometimes");
+        assertEquals(4, options.loadAttempts);
+        assertEquals(DataSaverPolicy.Mode.NO, options.dataSaver);
+    }
+
+    @Test
+    public void clearCacheTakesPrecedence() {
+        BrowserOptions options = BrowserOptions.parse("clearcache=yes,clearsessioncache=yes");
+        assertTrue(options.clearAllCache);
+        assertFalse(options.clearSessionCache);
+    }
+
+    @Test
+    public void prefetchNeedsRedirectInterface() {
+        assertFalse(BrowserOptions.parse("meliuzredirectprefetch=yes").meliuzRedirectPrefetch);
+        assertTrue(BrowserOptions.parse("meliuzredirectinterface=yes,meliuzredirectprefetch=yes").meliuzRedirectPrefetch);
+    }
+
+    @Test
+    public void readsOtherFeatures() {
+        BrowserOptions options = BrowserOptions.parse("closebuttoncaption=Done,datasaver=auto");
+        assertEquals("Done", options.getString("closebuttoncaption", null));
+        assertEquals("fallback", options.getString("missing", "fallback"));
+        assertEquals(DataSaverPolicy.Mode.AUTO, options.dataSaver);
+    }
+
+    @Test
+    public void cachesParsedOptions() {
+        assertSame(BrowserOptions.parse("zoom=no,hidden=yes"), BrowserOptions.parse("zoom=no,hidden=yes"));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DataSaverPolicyTest {
+
+    @Test
+    public void usesModeOfClosestDomain() {
+        DataSaverPolicy policy = new DataSaverPolicy("meliuz.com.br=no, store.com=yes,m.store.com=auto");
+        assertEquals(DataSaverPolicy.Mode.NO, policy.modeFor("www.meliuz.com.br", DataSaverPolicy.Mode.YES));
+        assertEquals(DataSaverPolicy.Mode.YES, policy.modeFor("Store.com", DataSaverPolicy.Mode.NO));
+        assertEquals(DataSaverPolicy.Mode.AUTO, policy.modeFor("a.m.store.com", DataSaverPolicy.Mode.NO));
+        assertEquals(DataSaverPolicy.Mode.NO, policy.modeFor("otherstore.com", DataSaverPolicy.Mode.NO));
+    }
+
+    @Test
+    public void usesDefaultWithoutDomains() {
+        assertEquals(DataSaverPolicy.Mode.AUTO, new DataSaverPolicy(null).modeFor("store.com", DataSaverPolicy.Mode.AUTO));
+        assertEquals(DataSaverPolicy.Mode.YES, new DataSaverPolicy("store.com=no").modeFor(null, DataSaverPolicy.Mode.YES));
+    }
+
+    @Test
+    public void skipsInvalidEntries() {
+        DataSaverPolicy policy = new DataSaverPolicy("store.com=maybe,bare,shop.com=yes");
+        assertEquals(DataSaverPolicy.Mode.NO, policy.modeFor("store.com", DataSaverPolicy.Mode.NO));
+        assertEquals(DataSaverPolicy.Mode.YES, policy.modeFor("shop.com", DataSaverPolicy.Mode.NO));
+    }
+
+    @Test
+    public void defersFontsAndMedia() {
+        assertTrue(DataSaverPolicy.isDeferred("/fonts/Roboto.WOFF2"));
+        assertTrue(DataSaverPolicy.isDeferred("/video/intro.mp4"));
+        assertFalse(DataSaverPolicy.isDeferred("/img/logo.png"));
+        assertFalse(DataSaverPolicy.isDeferred("/mp4"));
+        assertFalse(DataSaverPolicy.isDeferred(null));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.os.Looper;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventBatcherTest {
+
+    private final ArrayList<JSONArray> batches = new ArrayList<JSONArray>();
+
+    private final EventBatcher.Delivery delivery = new EventBatcher.Delivery() {
+        public void deliver(JSONArray events) {
+            batches.add(events);
+        }
+    };
+
+    @After
+    public void drainLooper() {
+        Looper.getMainLooper().runPending();
+    }
+
+    private static JSONObject event(String type, String url) {
+        JSONObject obj = new JSONObject();
+        obj.put("type", type);
+        obj.put("url", url);
+        return obj;
+    }
+
+    @Test
+    public void deliversOneBatchPerWindow() {
+        EventBatcher batcher = new EventBatcher(delivery, 50, false);
+        batcher.add(event("loadstart", "a"));
+        batcher.add(event("loadstop", "a"));
+        assertEquals(0, batches.size());
+        assertEquals(1, Looper.getMainLooper().runPending());
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).length());
+        assertEquals("loadstop", batches.get(0).getJSONObject(1).getString("type"));
+    }
+
+    @Test
+    public void flushDeliversAndCancelsTimer() {
+        EventBatcher batcher = new EventBatcher(delivery, 50, false);
+        batcher.add(event("loadstart", "a"));
+        batcher.flush();
+        assertEquals(1, batches.size());
+        assertEquals(0, Looper.getMainLooper().runPending());
+        batcher.flush();
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void collapsesConsecutiveLoadStarts() {
+        EventBatcher batcher = new EventBatcher(delivery, 50, true);
+        batcher.add(event("loadstart", "a"));
+        batcher.add(event("loadstart", "b"));
+        batcher.add(event("loadstart", "c"));
+        batcher.add(event("loadstop", "c"));
+        batcher.add(event("loadstart", "d"));
+        batcher.flush();
+        JSONArray events = batches.get(0);
+        assertEquals(3, events.length());
+        assertEquals("c", events.getJSONObject(0).getString("url"));
+        assertEquals("d", events.getJSONObject(2).getString("url"));
+    }
+
+    @Test
+    public void keepsRedirectsUnlessCollapsing() {
+        EventBatcher batcher = new EventBatcher(delivery, 50, false);
+        batcher.add(event("loadstart", "a"));
+        batcher.add(event("loadstart", "b"));
+        batcher.flush();
+        assertEquals(2, batches.get(0).length());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HostSuffixTrieTest {
+
+    private static int match(HostSuffixTrie trie, String host) {
+        return trie.match(host, 0, host.length());
+    }
+
+    @Test
+    public void matchesHostAndSubdomains() {
+        HostSuffixTrie trie = new HostSuffixTrie();
+        trie.add("example.com", 1);
+        assertEquals(1, match(trie, "example.com"));
+        assertEquals(1, match(trie, "ads.example.com"));
+        assertEquals(0, match(trie, "badexample.com"));
+        assertEquals(0, match(trie, "example.org"));
+        assertEquals(0, match(trie, "com"));
+    }
+
+    @Test
+    public void ignoresCaseOfLookups() {
+        HostSuffixTrie trie = new HostSuffixTrie();
+        trie.add("example.com", 1);
+        assertEquals(1, match(trie, "WWW.Example.COM"));
+    }
+
+    @Test
+    public void combinesFlagsOfEverySuffix() {
+        HostSuffixTrie trie = new HostSuffixTrie();
+        trie.add("example.com", 1);
+        trie.add("ads.example.com", 2);
+        trie.add("example.com", 4);
+        assertEquals(5, match(trie, "example.com"));
+        assertEquals(7, match(trie, "x.ads.example.com"));
+    }
+
+    @Test
+    public void matchesWithinLargerString() {
+        HostSuffixTrie trie = new HostSuffixTrie();
+        trie.add("example.com", 1);
+        String url = "https://cdn.example.com/path";
+        assertEquals(1, trie.match(url, 8, 23));
+        assertEquals(0, trie.match(url, 8, 22));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        HostSuffixTrie trie = new HostSuffixTrie();
+        for (int i = 0; i < 1000; i++) {
+            trie.add("host" + i + ".example.com", 1);
+        }
+        assertEquals(1, match(trie, "a.host999.example.com"));
+        assertEquals(0, match(trie, "host1000.example.com"));
+    }
+}
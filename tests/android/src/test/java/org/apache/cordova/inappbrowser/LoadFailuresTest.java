@@ -0,0 +1,183 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.webkit.WebViewClient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Loads pages from a local server that times out a number of times before it
+ * answers, retrying the way InAppBrowserClient.onReceivedError() does.
+ */
+public class LoadFailuresTest {
+
+    private static final int TIMEOUT_MILLIS = 100;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private String url;
+    // How many more requests time out before the server answers
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final LoadFailures failures = new LoadFailures();
+    // No delays, so that the tests do not wait
+    private final RetryPolicy policy = new RetryPolicy(4, 0);
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                if (failuresLeft.getAndDecrement() > 0) {
+                    try {
+                        Thread.sleep(TIMEOUT_MILLIS * 5);
+                    } catch (InterruptedException e) {
+                    }
+                    exchange.close();
+                    return;
+                }
+                byte[] body = "<html></html>".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        // The requests that time out must not hold up the next ones
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/store";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    /**
+     * Load a page until it loads or the policy gives up.
+     *
+     * @return whether the page loaded
+     */
+    private boolean load(String pageUrl) throws IOException {
+        while (true) {
+            HttpURLConnection connection = (HttpURLConnection) new URL(pageUrl).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            try {
+                InputStream in = connection.getInputStream();
+                while (in.read() != -1) {
+                }
+                in.close();
+                failures.clear();
+                return true;
+            } catch (SocketTimeoutException e) {
+                long retryIn = failures.failed(pageUrl, WebViewClient.ERROR_TIMEOUT, true, policy);
+                if (retryIn < 0) {
+                    return false;
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+
+    @Test
+    public void loadsOnceServerRecovers() throws IOException {
+        failuresLeft.set(2);
+        assertTrue(load(url));
+        assertEquals(3, requests.get());
+        assertNull(failures.getUrl());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws IOException {
+        failuresLeft.set(10);
+        assertFalse(load(url));
+        assertEquals(4, requests.get());
+        assertEquals(url, failures.getUrl());
+        assertEquals(4, failures.getLastAttempt());
+    }
+
+    @Test
+    public void newRoundLoadsPageGivenUpOn() throws IOException {
+        failuresLeft.set(5);
+        assertFalse(load(url));
+        // The connection came back
+        failures.newRound();
+        assertTrue(load(url));
+        assertEquals(6, requests.get());
+    }
+
+    @Test
+    public void offlineFailuresDoNotCount() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            assertEquals(-1, failures.failed(url, WebViewClient.ERROR_HOST_LOOKUP, false, policy));
+            assertEquals(1, failures.getLastAttempt());
+        }
+        // Online again, the page still has every attempt
+        failuresLeft.set(3);
+        assertTrue(load(url));
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void anotherPageStartsCountAgain() {
+        assertEquals(0, failures.failed(url, WebViewClient.ERROR_CONNECT, true, policy));
+        assertEquals(0, failures.failed(url, WebViewClient.ERROR_CONNECT, true, policy));
+        assertEquals(2, failures.getLastAttempt());
+        failures.failed(url + "?page=2", WebViewClient.ERROR_CONNECT, true, policy);
+        assertEquals(1, failures.getLastAttempt());
+        assertEquals(url + "?page=2", failures.getUrl());
+    }
+
+    @Test
+    public void doesNotRetryPermanentErrors() {
+        assertEquals(-1, failures.failed(url, WebViewClient.ERROR_BAD_URL, true, policy));
+        assertEquals(1, failures.getLastAttempt());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.os.SystemClock;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class NavigationMetricsTest {
+
+    private static NavigationTimeline navigation(boolean opening, long loadTime) {
+        SystemClock.setElapsedRealtime(1000);
+        NavigationTimeline timeline = new NavigationTimeline(1000, opening, "https://example.com/");
+        if (opening) {
+            timeline.windowReady(1010, NavigationTimeline.WINDOW_POOLED);
+        }
+        timeline.pageStarted();
+        SystemClock.setElapsedRealtime(1000 + loadTime / 2);
+        timeline.progressChanged();
+        SystemClock.setElapsedRealtime(1000 + loadTime);
+        timeline.pageFinished("https://example.com/");
+        return timeline;
+    }
+
+    @Test
+    public void reportsNearestRankPercentiles() {
+        NavigationMetrics metrics = new NavigationMetrics(100);
+        for (int i = 1; i <= 100; i++) {
+            metrics.add(navigation(false, i * 10));
+        }
+        JSONObject load = metrics.toJSON().getJSONObject("navigation").getJSONObject("load");
+        assertEquals(100, load.getInt("count"));
+        assertEquals(500, load.getLong("p50"));
+        assertEquals(950, load.getLong("p95"));
+    }
+
+    @Test
+    public void keepsOnlyLastValues() {
+        NavigationMetrics metrics = new NavigationMetrics(2);
+        metrics.add(navigation(false, 1000));
+        metrics.add(navigation(false, 10));
+        metrics.add(navigation(false, 20));
+        JSONObject load = metrics.toJSON().getJSONObject("navigation").getJSONObject("load");
+        assertEquals(2, load.getInt("count"));
+        assertEquals(20, load.getLong("p95"));
+    }
+
+    @Test
+    public void measuresOpeningNavigationsFromOpen() {
+        NavigationMetrics metrics = new NavigationMetrics(10);
+        metrics.add(navigation(true, 300));
+        metrics.add(navigation(false, 100));
+        JSONObject open = metrics.toJSON().getJSONObject("open");
+        assertEquals(1, open.getJSONObject("created").getInt("count"));
+        assertEquals(10, open.getJSONObject("created").getLong("p50"));
+        assertEquals(150, open.getJSONObject("progress").getLong("p50"));
+        assertEquals(300, open.getJSONObject("stop").getLong("p50"));
+        assertEquals(2, metrics.toJSON().getJSONObject("navigation").getJSONObject("load").getInt("count"));
+    }
+
+    @Test
+    public void leavesOutEmptyPercentiles() {
+        JSONObject created = new NavigationMetrics(10).toJSON().getJSONObject("open").getJSONObject("created");
+        assertEquals(0, created.getInt("count"));
+        assertFalse(created.has("p50"));
+    }
+}
@@ -0,0 +1,373 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Runs ResourceCache against a local HTTP server.
+ */
+public class ResourceCacheTest {
+
+    private static final String PAGE_HOST = "127.0.0.1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+    // What the server answers, by path
+    private final Map<String, Resource> resources = Collections.synchronizedMap(new HashMap<String, Resource>());
+    // The headers of each request the server got, in order
+    private final List<Headers> requests = Collections.synchronizedList(new ArrayList<Headers>());
+    // Background revalidations, run by runPending()
+    private final ArrayList<Runnable> pending = new ArrayList<Runnable>();
+    private ResourceCache cache;
+
+    private static class Resource {
+        final String body;
+        final String[] headers;
+        String etag;
+
+        Resource(String body, String... headers) {
+            this.body = body;
+            this.headers = headers;
+        }
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.add(exchange.getRequestHeaders());
+                Resource resource = resources.get(exchange.getRequestURI().getPath());
+                if (resource == null) {
+                    byte[] body = "Not found".getBytes("UTF-8");
+                    exchange.sendResponseHeaders(404, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                    return;
+                }
+                Headers headers = exchange.getResponseHeaders();
+                for (int i = 0; i < resource.headers.length; i += 2) {
+                    headers.add(resource.headers[i], resource.headers[i + 1]);
+                }
+                if (resource.etag != null) {
+                    headers.set("ETag", resource.etag);
+                    if (resource.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                }
+                byte[] body = resource.body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://" + PAGE_HOST + ":" + server.getAddress().getPort();
+        cache = newCache(1024 * 1024);
+        CookieManager.getInstance().removeAllCookie();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private ResourceCache newCache(long maxBytes) {
+        return new ResourceCache(folder.getRoot(), maxBytes, new Executor() {
+            public void execute(Runnable command) {
+                pending.add(command);
+            }
+        });
+    }
+
+    private void runPending() {
+        ArrayList<Runnable> runnables = new ArrayList<Runnable>(pending);
+        pending.clear();
+        for (Runnable runnable : runnables) {
+            runnable.run();
+        }
+    }
+
+    private WebResourceResponse request(String path, String... headers) {
+        HashMap<String, String> requestHeaders = new HashMap<String, String>();
+        for (int i = 0; i < headers.length; i += 2) {
+            requestHeaders.put(headers[i], headers[i + 1]);
+        }
+        return cache.intercept("GET", baseUrl + path, requestHeaders, PAGE_HOST, false);
+    }
+
+    private static String read(WebResourceResponse response) throws IOException {
+        InputStream in = response.getData();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Request a resource and read it to the end.
+     */
+    private String load(String path, String... headers) throws IOException {
+        WebResourceResponse response = request(path, headers);
+        assertNotNull(response);
+        assertEquals(200, response.getStatusCode());
+        return read(response);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void servesStoredResourceWithoutRequest() throws IOException {
+        resources.put("/app.js", new Resource("var a = 1;", "Cache-Control", "max-age=3600", "Content-Type", "text/javascript"));
+        assertEquals("var a = 1;", load("/app.js"));
+        WebResourceResponse response = request("/app.js");
+        assertEquals("text/javascript", response.getMimeType());
+        assertEquals("var a = 1;", read(response));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void requestsWhatIsNotStored() throws IOException {
+        resources.put("/a.js", new Resource("a", "Cache-Control", "max-age=3600"));
+        resources.put("/b.js", new Resource("b", "Cache-Control", "max-age=3600"));
+        assertEquals("a", load("/a.js"));
+        assertEquals("b", load("/b.js"));
+        assertEquals(2, requests.size());
+        assertNull(request("/page.html"));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void answers404WithoutStoring() throws IOException {
+        WebResourceResponse response = request("/missing.js");
+        assertEquals(404, response.getStatusCode());
+        assertEquals("Not found", read(response));
+        read(request("/missing.js"));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void revalidatesStaleResourceInBackground() throws IOException {
+        Resource resource = new Resource("v1", "Cache-Control", "max-age=0");
+        resource.etag = "\"1\"";
+        resources.put("/app.css", resource);
+        assertEquals("v1", load("/app.css"));
+
+        // Served stale, the server answers 304 to the revalidation
+        assertEquals("v1", load("/app.css"));
+        assertEquals(1, requests.size());
+        runPending();
+        assertEquals(2, requests.size());
+        assertEquals("\"1\"", requests.get(1).getFirst("If-None-Match"));
+        assertEquals("v1", load("/app.css"));
+    }
+
+    @Test
+    public void replacesResourceChangedOnRevalidation() throws IOException {
+        Resource resource = new Resource("v1", "Cache-Control", "max-age=0");
+        resource.etag = "\"1\"";
+        resources.put("/app.css", resource);
+        assertEquals("v1", load("/app.css"));
+
+        Resource changed = new Resource("v2", "Cache-Control", "max-age=3600");
+        changed.etag = "\"2\"";
+        resources.put("/app.css", changed);
+        assertEquals("v1", load("/app.css"));
+        runPending();
+        assertEquals("v2", load("/app.css"));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void neverStoresNoStore() throws IOException {
+        resources.put("/app.js", new Resource("a", "Cache-Control", "no-store, max-age=3600"));
+        assertEquals("a", load("/app.js"));
+        assertEquals("a", load("/app.js"));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void revalidatesNoCacheBeforeServing() throws IOException {
+        Resource resource = new Resource("v1", "Cache-Control", "no-cache");
+        resource.etag = "\"1\"";
+        resources.put("/app.js", resource);
+        assertEquals("v1", load("/app.js"));
+
+        assertEquals("v1", load("/app.js"));
+        assertEquals(2, requests.size());
+        assertEquals("\"1\"", requests.get(1).getFirst("If-None-Match"));
+        assertEquals(0, pending.size());
+
+        Resource changed = new Resource("v2", "Cache-Control", "no-cache");
+        changed.etag = "\"2\"";
+        resources.put("/app.js", changed);
+        assertEquals("v2", load("/app.js"));
+    }
+
+    @Test
+    public void revalidatesMustRevalidateOnceStale() throws IOException {
+        Resource resource = new Resource("v1", "Cache-Control", "max-age=0, must-revalidate");
+        resource.etag = "\"1\"";
+        resources.put("/app.js", resource);
+        assertEquals("v1", load("/app.js"));
+        assertEquals("v1", load("/app.js"));
+        assertEquals(2, requests.size());
+        assertEquals("\"1\"", requests.get(1).getFirst("If-None-Match"));
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        cache = newCache(8000);
+        for (int i = 0; i < 8; i++) {
+            resources.put("/" + i + ".png", new Resource(repeat((char) ('a' + i), 900), "Cache-Control", "max-age=3600"));
+            load("/" + i + ".png");
+        }
+        // Used again, so 1.png is the least recently used
+        load("/0.png");
+        assertEquals(8, requests.size());
+
+        resources.put("/8.png", new Resource(repeat('i', 900), "Cache-Control", "max-age=3600"));
+        load("/8.png");
+        load("/0.png");
+        assertEquals(9, requests.size());
+        load("/1.png");
+        assertEquals(10, requests.size());
+    }
+
+    @Test
+    public void doesNotStoreResourceLargerThanItsShare() throws IOException {
+        cache = newCache(8000);
+        resources.put("/big.png", new Resource(repeat('a', 1001), "Cache-Control", "max-age=3600"));
+        load("/big.png");
+        load("/big.png");
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void doesNotStorePartiallyReadBody() throws IOException {
+        resources.put("/app.js", new Resource(repeat('a', 4096), "Cache-Control", "max-age=3600"));
+        WebResourceResponse response = request("/app.js");
+        InputStream in = response.getData();
+        assertEquals('a', in.read());
+        in.close();
+
+        assertEquals(4096, load("/app.js").length());
+        assertEquals(2, requests.size());
+        assertEquals(4096, load("/app.js").length());
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void keepsIndexAcrossInstances() throws IOException {
+        resources.put("/app.js", new Resource("a", "Cache-Control", "max-age=3600"));
+        load("/app.js");
+        cache = newCache(1024 * 1024);
+        assertEquals("a", load("/app.js"));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void matchesHeadersNamedByVary() throws IOException {
+        resources.put("/font.woff2", new Resource("f", "Cache-Control", "max-age=3600", "Vary", "Origin, Accept-Encoding"));
+        load("/font.woff2", "Origin", "https://a.example");
+        load("/font.woff2", "Origin", "https://a.example");
+        assertEquals(1, requests.size());
+        load("/font.woff2", "Origin", "https://b.example");
+        assertEquals(2, requests.size());
+        load("/font.woff2");
+        assertEquals(3, requests.size());
+    }
+
+    @Test
+    public void neverStoresVaryOnCookie() throws IOException {
+        resources.put("/app.js", new Resource("a", "Cache-Control", "max-age=3600", "Vary", "Cookie"));
+        load("/app.js");
+        load("/app.js");
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void sendsCookiesToSameSiteOnly() throws IOException {
+        CookieManager.getInstance().setCookie(baseUrl, "session=1");
+        resources.put("/app.js", new Resource("a"));
+        load("/app.js");
+        assertEquals("session=1", requests.get(0).getFirst("Cookie"));
+
+        WebResourceResponse response = cache.intercept("GET", baseUrl + "/app.js", new HashMap<String, String>(), "shop.example", false);
+        read(response);
+        assertNull(requests.get(1).getFirst("Cookie"));
+    }
+
+    @Test
+    public void leavesThirdPartyResourcesToWebView() {
+        resources.put("/app.js", new Resource("a"));
+        assertNull(cache.intercept("GET", baseUrl + "/app.js", new HashMap<String, String>(), "shop.example", true));
+        assertEquals(0, requests.size());
+    }
+}
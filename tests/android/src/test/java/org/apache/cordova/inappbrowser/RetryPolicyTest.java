@@ -0,0 +1,68 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import android.webkit.WebViewClient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private static void assertDelayBetween(long min, long max, long delay) {
+        assertTrue("delay " + delay + " not in [" + min + ", " + max + "]", delay >= min && delay <= max);
+    }
+
+    @Test
+    public void doublesDelayWithJitter() {
+        RetryPolicy policy = new RetryPolicy(4, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertDelayBetween(500, 1000, policy.delayAfter(1, WebViewClient.ERROR_TIMEOUT));
+            assertDelayBetween(1000, 2000, policy.delayAfter(2, WebViewClient.ERROR_TIMEOUT));
+            assertDelayBetween(2000, 4000, policy.delayAfter(3, WebViewClient.ERROR_TIMEOUT));
+        }
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        RetryPolicy policy = new RetryPolicy(3, 1000);
+        assertTrue(policy.delayAfter(2, WebViewClient.ERROR_CONNECT) >= 0);
+        assertEquals(-1, policy.delayAfter(3, WebViewClient.ERROR_CONNECT));
+        assertEquals(-1, new RetryPolicy(0, 1000).delayAfter(1, WebViewClient.ERROR_CONNECT));
+    }
+
+    @Test
+    public void capsDelay() {
+        RetryPolicy policy = new RetryPolicy(100, 1000);
+        assertDelayBetween(RetryPolicy.MAX_DELAY / 2, RetryPolicy.MAX_DELAY, policy.delayAfter(60, WebViewClient.ERROR_IO));
+        assertDelayBetween(RetryPolicy.MAX_DELAY / 2, RetryPolicy.MAX_DELAY, new RetryPolicy(2, 60000).delayAfter(1, WebViewClient.ERROR_IO));
+    }
+
+    @Test
+    public void retriesOnlyTransientErrors() {
+        assertTrue(RetryPolicy.isTransient(WebViewClient.ERROR_HOST_LOOKUP));
+        assertTrue(RetryPolicy.isTransient(WebViewClient.ERROR_TOO_MANY_REQUESTS));
+        assertFalse(RetryPolicy.isTransient(WebViewClient.ERROR_BAD_URL));
+        assertFalse(RetryPolicy.isTransient(WebViewClient.ERROR_FAILED_SSL_HANDSHAKE));
+        assertEquals(-1, new RetryPolicy(4, 1000).delayAfter(1, WebViewClient.ERROR_UNSUPPORTED_SCHEME));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ScriptTemplateTest {
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder();
+        ScriptTemplate.appendQuoted(sb, value);
+        return sb.toString();
+    }
+
+    @Test
+    public void quotesLikeJson() {
+        String source = "a \"quoted\" \\ path\n\r\t\b\f and \u0001 control";
+        assertEquals(source, new JSONArray("[" + quote(source) + "]").getString(0));
+    }
+
+    @Test
+    public void escapesJavaScriptLineTerminators() {
+        assertEquals("\"a\\u2028b\\u2029c\"", quote("a\u2028b\u2029c"));
+    }
+
+    @Test
+    public void leavesPlainTextAlone() {
+        assertEquals("\"plain text, été\"", quote("plain text, été"));
+    }
+
+    @Test
+    public void wrapsSourceAndCallbackId() {
+        ScriptTemplate template = new ScriptTemplate("run(%s, '%s');");
+        assertEquals("run(\"x\\\"y\", 'id1');", template.apply("x\"y", "id1"));
+        assertEquals("run(\"x\\\"y\", 'id2');", template.apply("x\"y", "id2"));
+    }
+
+    @Test
+    public void wrapsSourceWithoutCallback() {
+        ScriptTemplate template = new ScriptTemplate("run(%s);");
+        assertEquals("run(\"x\");", template.apply("x", null));
+    }
+
+    @Test
+    public void cachesWrappedSources() {
+        ScriptTemplate template = new ScriptTemplate("run(%s);");
+        assertSame(template.apply("same", null), template.apply("same", null));
+    }
+
+    @Test
+    public void matchesStringFormat() {
+        String wrapper = "(function(d) { var c = d.createElement('style'); c.innerHTML = %s; d.body.appendChild(c); })(document)";
+        String source = "body { content: \"\\\\\"; }\n";
+        JSONArray escaped = new JSONArray();
+        escaped.put(source);
+        String json = escaped.toString();
+        assertEquals(String.format(wrapper, json.substring(1, json.length() - 1)), new ScriptTemplate(wrapper).apply(source, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWrapperWithoutPlaceholder() {
+        new ScriptTemplate("run();");
+    }
+}
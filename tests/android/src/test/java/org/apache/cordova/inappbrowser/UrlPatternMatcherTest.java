@@ -0,0 +1,102 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.inappbrowser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class UrlPatternMatcherTest {
+
+    private static UrlPatternMatcher compile(String... patterns) {
+        UrlPatternMatcher matcher = new UrlPatternMatcher();
+        for (int i = 0; i < patterns.length; i++) {
+            matcher.add(patterns[i], 1 << i);
+        }
+        matcher.compile();
+        return matcher;
+    }
+
+    private static int match(UrlPatternMatcher matcher, String url) {
+        int hostStart = url.indexOf("://") + 3;
+        int hostEnd = url.indexOf('/', hostStart);
+        return matcher.match(url, hostStart, hostEnd < 0 ? url.length() : hostEnd, 0);
+    }
+
+    @Test
+    public void matchesLiteralAnywhere() {
+        UrlPatternMatcher matcher = compile("/banner/");
+        assertEquals(1, match(matcher, "https://example.com/img/banner/1.png"));
+        assertEquals(0, match(matcher, "https://example.com/img/banners.png"));
+    }
+
+    @Test
+    public void matchesWildcardsAndSeparators() {
+        UrlPatternMatcher matcher = compile("/ads/*.gif^");
+        assertEquals(1, match(matcher, "https://example.com/ads/x/y.gif?size=1"));
+        assertEquals(1, match(matcher, "https://example.com/ads/y.gif"));
+        assertEquals(0, match(matcher, "https://example.com/ads/y.gifs"));
+    }
+
+    @Test
+    public void anchorsAtHostLabels() {
+        UrlPatternMatcher matcher = compile("||tracker.net^");
+        assertEquals(1, match(matcher, "https://tracker.net/pixel"));
+        assertEquals(1, match(matcher, "https://eu.tracker.net/pixel"));
+        assertEquals(0, match(matcher, "https://notatracker.net/pixel"));
+        assertEquals(0, match(matcher, "https://example.com/?u=tracker.net"));
+    }
+
+    @Test
+    public void anchorsAtStartAndEnd() {
+        UrlPatternMatcher matcher = compile("|http://", ".swf|");
+        assertEquals(1, match(matcher, "http://example.com/"));
+        assertEquals(0, match(matcher, "https://example.com/?http://"));
+        assertEquals(2, match(matcher, "https://example.com/movie.swf"));
+        assertEquals(0, match(matcher, "https://example.com/movie.swf?x"));
+    }
+
+    @Test
+    public void ignoresCase() {
+        UrlPatternMatcher matcher = compile("/AdServer/");
+        assertEquals(1, match(matcher, "https://example.com/adserver/x"));
+        assertEquals(1, compile("/adserver/").match("https://example.com/ADSERVER/x", 8, 19, 0));
+    }
+
+    @Test
+    public void checksShortPatternsWithoutKey() {
+        UrlPatternMatcher matcher = compile("/a*b/");
+        assertEquals(1, match(matcher, "https://example.com/a/x/b/"));
+    }
+
+    @Test
+    public void combinesFlagsAndSkipsIgnoredOnes() {
+        UrlPatternMatcher matcher = compile("/ads/", "ads", "/ads/banner");
+        String url = "https://example.com/ads/banner.png";
+        assertEquals(7, match(matcher, url));
+        assertEquals(5, matcher.match(url, 8, 19, 2));
+    }
+
+    @Test
+    public void findsOverlappingKeys() {
+        UrlPatternMatcher matcher = compile("abcd", "bcde", "cdef");
+        assertEquals(7, match(matcher, "https://example.com/abcdefg"));
+        assertEquals(2, match(matcher, "https://example.com/xbcdex"));
+    }
+}
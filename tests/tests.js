@@ -177,6 +177,24 @@ exports.defineManualTests = function (contentEl, createActionButton) {
             });
         }
     }
+    function openWithLargeScriptResult(url) {
+        var iab = doOpen(url, '_blank', 'location=yes');
+        iab.addEventListener('loadstop', function (event) {
+            var code = 'new Array(1024 * 1024 + 1).join("x")';
+            iab.executeScript({ code: code }, function (results) {
+                if (results && results.length === 1 && results[0].length === 1024 * 1024) {
+                    alert('Results verified');
+                } else {
+                    alert('Got: ' + typeof (results) + '\n' + (results && results[0] && results[0].length));
+                }
+            });
+        });
+    }
+    function openWithUserScriptAndStyle(url) {
+        var iab = doOpen(url, '_blank', 'location=yes');
+        iab.addUserStyle({ code: '#style-update-literal { \ndisplay: block !important; \n}', injectionTime: 'documentStart' });
+        iab.addUserScript({ code: 'document.getElementById("header").innerHTML = "Script literal successfully injected";' });
+    }
     var hiddenwnd = null;
     var loadlistener = function (event) { alert('background window loaded '); };
     function openHidden(url, startHidden) {
@@ -200,6 +218,112 @@ exports.defineManualTests = function (contentEl, createActionButton) {
             hiddenwnd = null;
         }
     }
+    function openTwoWindows() {
+        var first = cordova.InAppBrowser.open('https://www.google.co.uk', '_blank', 'hidden=yes');
+        var second = cordova.InAppBrowser.open('http://cordova.apache.org', '_blank');
+        second.addEventListener('exit', function () {
+            first.show();
+            first.addEventListener('exit', function () {
+                alert('both windows closed');
+            });
+        });
+    }
+
+    function formatPercentiles(samples) {
+        samples.sort(function (a, b) { return a - b; });
+        function at(percent) {
+            return samples[Math.max(Math.ceil(percent / 100 * samples.length), 1) - 1];
+        }
+        return samples.length + ' runs, p50 ' + at(50) + ' ms, p95 ' + at(95) + ' ms';
+    }
+    function benchmarkExecuteScript(url, runs) {
+        // 16 KB of characters that all need escaping in the injected source
+        var payload = new Array(4097).join('"\\\n\u2028');
+        // Older engines do not allow a raw U+2028 in a string literal
+        var code = JSON.stringify(payload).replace(/\u2028/g, '\\u2028') + '.length';
+        var samples = [];
+        var iab = cordova.InAppBrowser.open(url, '_blank', 'hidden=yes');
+        var onLoadStop = function () {
+            iab.removeEventListener('loadstop', onLoadStop);
+            run();
+        };
+        function run() {
+            if (samples.length === runs) {
+                iab.close();
+                alert('executeScript: ' + formatPercentiles(samples));
+                return;
+            }
+            var started = Date.now();
+            iab.executeScript({ code: code }, function (results) {
+                samples.push(Date.now() - started);
+                if (!results || results[0] !== payload.length) {
+                    iab.close();
+                    alert('Unexpected result: ' + JSON.stringify(results));
+                    return;
+                }
+                run();
+            });
+        }
+        iab.addEventListener('loadstop', onLoadStop);
+    }
+    function benchmarkOpen(url, runs) {
+        var samples = [];
+        function run() {
+            if (samples.length === runs) {
+                cordova.InAppBrowser.getMetrics(function (metrics) {
+                    alert('open to loadstop: ' + formatPercentiles(samples) + '\nnative: ' + JSON.stringify(metrics.open.stop));
+                }, function () {
+                    alert('open to loadstop: ' + formatPercentiles(samples));
+                });
+                return;
+            }
+            var started = Date.now();
+            var iab = cordova.InAppBrowser.open(url, '_blank', 'hidden=yes');
+            iab.addEventListener('loadstop', function () {
+                samples.push(Date.now() - started);
+                iab.close();
+            });
+            iab.addEventListener('exit', run);
+        }
+        run();
+    }
+
+    function openAndClose(url, times, done) {
+        if (times === 0) {
+            done();
+            return;
+        }
+        var iab = cordova.InAppBrowser.open(url, '_blank', 'hidden=yes');
+        iab.addEventListener('loadstop', function () {
+            iab.close();
+        });
+        iab.addEventListener('exit', function () {
+            openAndClose(url, times - 1, done);
+        });
+    }
+
+    function leakCheck(url, warmups, runs) {
+        var maxHeapGrowth = 4 * 1024 * 1024;
+        // Let the warm pool and the caches fill up before the baseline
+        openAndClose(url, warmups, function () {
+            cordova.InAppBrowser.getMetrics(function (before) {
+                openAndClose(url, runs, function () {
+                    cordova.InAppBrowser.getMetrics(function (after) {
+                        var windows = after.memory.windows - before.memory.windows;
+                        var javaHeap = after.memory.javaHeap - before.memory.javaHeap;
+                        var nativeHeap = after.memory.nativeHeap - before.memory.nativeHeap;
+                        var passed = windows <= 0 && javaHeap < maxHeapGrowth;
+                        alert((passed ? 'PASS' : 'FAIL') + ' after ' + runs + ' opens\nwindows: ' + windows +
+                            '\njava heap: ' + Math.round(javaHeap / 1024) + ' KB\nnative heap: ' + Math.round(nativeHeap / 1024) + ' KB');
+                    }, function (message) {
+                        alert('getMetrics failed: ' + message);
+                    });
+                });
+            }, function (message) {
+                alert('getMetrics failed: ' + message);
+            });
+        });
+    }
 
     var info_div = '<h1>InAppBrowser</h1>' +
         '<div id="info">' +
@@ -265,7 +389,9 @@ exports.defineManualTests = function (contentEl, createActionButton) {
         '<div id="openRedirect301"></div>' +
         'Expected result: should 301 and open successfully in InAppBrowser to https://www.google.co.uk.' +
         '<p/> <div id="openRedirect302"></div>' +
-        'Expected result: should 302 and open successfully in InAppBrowser to www.zhihu.com/answer/16714076.';
+        'Expected result: should 302 and open successfully in InAppBrowser to www.zhihu.com/answer/16714076.' +
+        '<p/> <div id="openRedirectBatched"></div>' +
+        'Expected result: same as the 302 test, with the events delivered in batches (Android only).';
 
     var pdf_url_tests = '<h1>PDF URL</h1>' +
         '<div id="openPDF"></div>' +
@@ -276,10 +402,14 @@ exports.defineManualTests = function (contentEl, createActionButton) {
     var invalid_url_tests = '<h1>Invalid URL</h1>' +
         '<div id="openInvalidScheme"></div>' +
         'Expected result: fail to load in InAppBrowser.' +
+        '<p/> <div id="openIntentFallback"></div>' +
+        'Expected result: no app can open the intent: link, so InAppBrowser opens its browser_fallback_url, https://cordova.apache.org/ (Android only).' +
         '<p/> <div id="openInvalidHost"></div>' +
         'Expected result: fail to load in InAppBrowser.' +
         '<p/> <div id="openInvalidMissing"></div>' +
-        'Expected result: fail to load in InAppBrowser (404).';
+        'Expected result: fail to load in InAppBrowser (404).' +
+        '<p/> <div id="openRetryRefused"></div>' +
+        'Expected result: InAppBrowser opens on an error page counting down to each retry of http://127.0.0.1:9/, where nothing listens. After the third failure the countdown stops and an alert lists the 3 loaderror events, retrying in 250 to 500 ms, then 500 to 1000 ms, then -1. "Fechar" closes the browser (Android only).';
 
     var css_js_injection_tests = '<h1>CSS / JS Injection</h1>' +
         '<div id="openOriginalDocument"></div>' +
@@ -299,7 +429,41 @@ exports.defineManualTests = function (contentEl, createActionButton) {
         '<p/> <div id="openScriptLiteralInjection"></div>' +
         'Expected result: open successfully in InAppBrowser with the text "Script literal successfully injected" .' +
         '<p/> <div id="openScriptLiteralInjectionCallback"></div>' +
-        'Expected result: open successfully in InAppBrowser with the text "Script literal successfully injected" and alert dialog with the text "Results verified".';
+        'Expected result: open successfully in InAppBrowser with the text "Script literal successfully injected" and alert dialog with the text "Results verified".' +
+        '<p/> <div id="openScriptLargeResultCallback"></div>' +
+        'Expected result: open successfully in InAppBrowser and alert dialog with the text "Results verified" (the 1 MB result is delivered in chunks).' +
+        '<p/> <div id="openUserScriptAndStyle"></div>' +
+        'Expected result: open successfully in InAppBrowser with "Style updated from literal" and the text "Script literal successfully injected", without waiting for loadstop. Both stay after reloading the page.';
+
+    var prerender_tests = '<h1>Prerender</h1>' +
+        '<div id="prerenderPage"></div>' +
+        'Expected result: nothing is shown.' +
+        '<p/> <div id="openPrerenderedPage"></div>' +
+        'Expected result: open successfully in InAppBrowser to https://www.google.co.uk, already loaded when prerendered a few seconds before (Android only).';
+
+    var metrics_tests = '<h1>Metrics</h1>' +
+        '<div id="openWithMetrics"></div>' +
+        'Expected result: open successfully in InAppBrowser to https://www.google.co.uk. Alert appears with the metrics of the page, including the start and stop times (Android only).' +
+        '<p/> <div id="getMetrics"></div>' +
+        'Expected result: alert appears with the p50 and p95 of the pages opened so far (Android only).' +
+        '<p/> <div id="openWithContentBlocker"></div>' +
+        'Expected result: open successfully in InAppBrowser to https://www.google.co.uk. Alert appears with the number of blocked resources, more than 0 when the app has InAppBrowserContentBlockerRules set (Android 5.0+ only).' +
+        '<p/> <div id="openWithDataSaver"></div>' +
+        'Expected result: open successfully in InAppBrowser to https://www.google.co.uk without images. The images appear 5 seconds after the page has loaded (Android only).';
+
+    var benchmark_tests = '<h1>Benchmarks</h1>' +
+        '<div id="benchmarkExecuteScript"></div>' +
+        'Expected result: no browser window. Alert appears with the p50 and p95 time of 100 executeScript calls returning a result, each injecting 16 KB of quotes, backslashes and line breaks.' +
+        '<p/> <div id="benchmarkOpen"></div>' +
+        'Expected result: no browser window. Alert appears with the p50 and p95 time from open to loadstop of a local page, over 10 opens. On Android the same measure taken natively follows.' +
+        '<p/> <div id="leakCheck"></div>' +
+        'Expected result: no browser window. Alert appears with PASS after 30 opens and closes of a local page: no browser window left behind, and the Java heap grown by less than 4 MB (Android only).';
+
+    var memory_tests = '<h1>Memory</h1>' +
+        '<div id="openForMemoryTrim"></div>' +
+        'Expected result: open successfully in InAppBrowser to https://www.google.co.uk, with a hidden browser behind it. Run "adb shell am send-trim-memory &lt;package&gt; RUNNING_CRITICAL": alert appears with the memory event, reporting 1 closed browser (Android only).' +
+        '<p/> <div id="openPausingHost"></div>' +
+        'Expected result: open successfully in InAppBrowser to https://www.google.co.uk. Close it after a few seconds: alert appears with far fewer app timer ticks than seconds open, and the loadstart and loadstop events, all received at about the time the browser closed (Android only).';
 
     var open_hidden_tests = '<h1>Open Hidden </h1>' +
         '<div id="openHidden"></div>' +
@@ -309,13 +473,17 @@ exports.defineManualTests = function (contentEl, createActionButton) {
         '<p/> <div id="closeHidden"></div>' +
         'Expected result: no output. But click on "show hidden" again and nothing should be shown.' +
         '<p/> <div id="openHiddenShow"></div>' +
-        'Expected result: open successfully in InAppBrowser to https://www.google.co.uk';
+        'Expected result: open successfully in InAppBrowser to https://www.google.co.uk' +
+        '<p/> <div id="openTwoWindows"></div>' +
+        'Expected result: open successfully in InAppBrowser to http://cordova.apache.org. After closing it, https://www.google.co.uk is shown at once, already loaded. Alert appears with the text "both windows closed" after closing it too (Android only).';
 
     var clearing_cache_tests = '<h1>Clearing Cache</h1>' +
         '<div id="openClearCache"></div>' +
         'Expected result: ?' +
         '<p/> <div id="openClearSessionCache"></div>' +
-        'Expected result: ?';
+        'Expected result: ?' +
+        '<p/> <div id="openResourceCache"></div>' +
+        'Expected result: open successfully in InAppBrowser to http://cordova.apache.org. Close and open again: the page scripts, styles and images are served from the resource cache (Android, see the ResourceCache log).';
 
     var video_tag_tests = '<h1>Video tag</h1>' +
         '<div id="openRemoteVideo"></div>' +
@@ -332,11 +500,11 @@ exports.defineManualTests = function (contentEl, createActionButton) {
     if (window.MSApp && window.MSApp.execUnsafeLocalFunction) {
         MSApp.execUnsafeLocalFunction(function() {
             contentEl.innerHTML = info_div + local_tests + white_listed_tests + non_white_listed_tests + page_with_redirects_tests + pdf_url_tests + invalid_url_tests +
-                css_js_injection_tests + open_hidden_tests + clearing_cache_tests + video_tag_tests + local_with_anchor_tag_tests;
+                css_js_injection_tests + prerender_tests + metrics_tests + benchmark_tests + memory_tests + open_hidden_tests + clearing_cache_tests + video_tag_tests + local_with_anchor_tag_tests;
         });
     } else {
         contentEl.innerHTML = info_div + local_tests + white_listed_tests + non_white_listed_tests + page_with_redirects_tests + pdf_url_tests + invalid_url_tests +
-            css_js_injection_tests + open_hidden_tests + clearing_cache_tests + video_tag_tests + local_with_anchor_tag_tests;
+            css_js_injection_tests + prerender_tests + metrics_tests + benchmark_tests + memory_tests + open_hidden_tests + clearing_cache_tests + video_tag_tests + local_with_anchor_tag_tests;
     }
 
     document.getElementById("user-agent").textContent = navigator.userAgent;
@@ -432,6 +600,9 @@ exports.defineManualTests = function (contentEl, createActionButton) {
     createActionButton('http://goo.gl/pUFqg', function () {
         doOpen('http://goo.gl/pUFqg', 'random_string', '', 2);
     }, 'openRedirect302');
+    createActionButton('http://goo.gl/pUFqg (batched events)', function () {
+        doOpen('http://goo.gl/pUFqg', 'random_string', 'batchevents=yes', 2);
+    }, 'openRedirectBatched');
 
     //PDF URL
     createActionButton('Remote URL', function () {
@@ -445,12 +616,25 @@ exports.defineManualTests = function (contentEl, createActionButton) {
     createActionButton('Invalid Scheme', function () {
         doOpen('x-ttp://www.invalid.com/', '_blank');
     }, 'openInvalidScheme');
+    createActionButton('Intent Fallback', function () {
+        doOpen('intent://open#Intent;scheme=x-nonexistent;package=org.example.nonexistent;S.browser_fallback_url=https%3A%2F%2Fcordova.apache.org%2F;end', '_blank');
+    }, 'openIntentFallback');
     createActionButton('Invalid Host', function () {
         doOpen('http://www.inv;alid.com/', '_blank');
     }, 'openInvalidHost');
     createActionButton('Missing Local File', function () {
         doOpen('nonexistent.html', '_blank');
     }, 'openInvalidMissing');
+    createActionButton('Retry Refused Connection', function () {
+        var errors = [];
+        var iab = cordova.InAppBrowser.open('http://127.0.0.1:9/', '_blank', 'loadattempts=3,retrydelay=500');
+        iab.addEventListener('loaderror', function (event) {
+            errors.push('attempt ' + event.attempt + ', code ' + event.code + ', retry in ' + event.retryIn + ' ms');
+            if (event.retryIn < 0) {
+                alert(errors.join('\n'));
+            }
+        });
+    }, 'openRetryRefused');
 
     //CSS / JS injection
     createActionButton('Original Document', function () {
@@ -480,6 +664,89 @@ exports.defineManualTests = function (contentEl, createActionButton) {
     createActionButton('Script Literal Injection (callback)', function () {
         openWithScript(injecthtml, null, true);
     }, 'openScriptLiteralInjectionCallback');
+    createActionButton('Script Large Result (callback)', function () {
+        openWithLargeScriptResult(injecthtml);
+    }, 'openScriptLargeResultCallback');
+    createActionButton('User Script and Style', function () {
+        openWithUserScriptAndStyle(injecthtml);
+    }, 'openUserScriptAndStyle');
+
+    //Prerender
+    createActionButton('Prerender', function () {
+        cordova.InAppBrowser.prerender('https://www.google.co.uk', null, function (message) {
+            alert('prerender failed: ' + message);
+        });
+    }, 'prerenderPage');
+    createActionButton('Open Prerendered', function () {
+        doOpen('https://www.google.co.uk', '_blank');
+    }, 'openPrerenderedPage');
+
+    //Metrics
+    createActionButton('Open With Metrics', function () {
+        var iab = cordova.InAppBrowser.open('https://www.google.co.uk', '_blank');
+        iab.addEventListener('metrics', function (event) {
+            alert(JSON.stringify(event));
+        });
+    }, 'openWithMetrics');
+    createActionButton('Get Metrics', function () {
+        cordova.InAppBrowser.getMetrics(function (metrics) {
+            alert(JSON.stringify(metrics));
+        }, function (message) {
+            alert('getMetrics failed: ' + message);
+        });
+    }, 'getMetrics');
+    createActionButton('Open With Content Blocker', function () {
+        var iab = cordova.InAppBrowser.open('https://www.google.co.uk', '_blank', 'contentblocker=yes');
+        iab.addEventListener('loadstop', function (event) {
+            alert('Blocked: ' + event.blocked);
+        });
+    }, 'openWithContentBlocker');
+    createActionButton('Open With Data Saver', function () {
+        var iab = cordova.InAppBrowser.open('https://www.google.co.uk', '_blank', 'datasaver=yes');
+        iab.addEventListener('loadstop', function () {
+            setTimeout(function () {
+                iab.setDataSaver(false);
+            }, 5000);
+        });
+    }, 'openWithDataSaver');
+
+    //Benchmarks
+    createActionButton('Benchmark executeScript', function () {
+        benchmarkExecuteScript(localhtml, 100);
+    }, 'benchmarkExecuteScript');
+    createActionButton('Benchmark open', function () {
+        benchmarkOpen(localhtml, 10);
+    }, 'benchmarkOpen');
+    createActionButton('Leak check', function () {
+        leakCheck(localhtml, 3, 30);
+    }, 'leakCheck');
+
+    //Memory
+    createActionButton('Open For Memory Trim', function () {
+        cordova.InAppBrowser.open('http://cordova.apache.org', '_blank', 'hidden=yes');
+        var iab = cordova.InAppBrowser.open('https://www.google.co.uk', '_blank');
+        iab.addEventListener('memory', function (event) {
+            alert(JSON.stringify(event));
+        });
+    }, 'openForMemoryTrim');
+    createActionButton('Open Pausing Host', function () {
+        var ticks = 0;
+        var openedAt = Date.now();
+        var events = [];
+        var timer = setInterval(function () {
+            ticks++;
+        }, 100);
+        var iab = cordova.InAppBrowser.open('https://www.google.co.uk', '_blank', 'pausehost=yes');
+        var record = function (event) {
+            events.push(event.type + ' received at ' + ((Date.now() - openedAt) / 1000).toFixed(1) + ' s');
+        };
+        iab.addEventListener('loadstart', record);
+        iab.addEventListener('loadstop', record);
+        iab.addEventListener('exit', function () {
+            clearInterval(timer);
+            alert('Closed at ' + ((Date.now() - openedAt) / 1000).toFixed(1) + ' s, ' + ticks + ' ticks of 100 ms\n' + events.join('\n'));
+        });
+    }, 'openPausingHost');
 
     //Open hidden
     createActionButton('Create Hidden', function () {
@@ -494,6 +761,9 @@ exports.defineManualTests = function (contentEl, createActionButton) {
     createActionButton('google.co.uk Not Hidden', function () {
         openHidden('https://www.google.co.uk', false);
     }, 'openHiddenShow');
+    createActionButton('Two Windows', function () {
+        openTwoWindows();
+    }, 'openTwoWindows');
 
     //Clearing cache
     createActionButton('Clear Browser Cache', function () {
@@ -502,6 +772,9 @@ exports.defineManualTests = function (contentEl, createActionButton) {
     createActionButton('Clear Session Cache', function () {
         doOpen('https://www.google.co.uk', '_blank', 'clearsessioncache=yes');
     }, 'openClearSessionCache');
+    createActionButton('Resource Cache', function () {
+        doOpen('http://cordova.apache.org', '_blank', 'resourcecache=yes');
+    }, 'openResourceCache');
 
     //Video tag
     createActionButton('Remote Video', function () {
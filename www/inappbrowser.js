@@ -24,26 +24,44 @@ var channel = require('cordova/channel');
 var modulemapper = require('cordova/modulemapper');
 var urlutil = require('cordova/urlutil');
 
+// Ids of the InAppBrowser objects, the native side keeps one session per id
+var sessionPrefix = Date.now().toString(36) + '-';
+var nextSessionId = 0;
+
 function InAppBrowser() {
+   this.id = sessionPrefix + (nextSessionId++);
    this.channels = {
         'loadstart': channel.create('loadstart'),
         'loadstop' : channel.create('loadstop'),
         'loaderror' : channel.create('loaderror'),
+        'metrics' : channel.create('metrics'),
+        'memory' : channel.create('memory'),
         'exit' : channel.create('exit')
    };
 }
 
 InAppBrowser.prototype = {
     _eventHandler: function (event) {
-        if (event && (event.type in this.channels)) {
+        // With batchevents=yes, several events arrive as one array
+        if (Array.isArray(event)) {
+            for (var i = 0; i < event.length; i++) {
+                this._eventHandler(event[i]);
+            }
+        } else if (event && (event.type in this.channels)) {
             this.channels[event.type].fire(event);
         }
     },
     close: function (eventname) {
-        exec(null, null, "InAppBrowser", "close", []);
+        exec(null, null, "InAppBrowser", "close", [this.id]);
     },
     show: function (eventname) {
-      exec(null, null, "InAppBrowser", "show", []);
+      exec(null, null, "InAppBrowser", "show", [this.id]);
+    },
+    hide: function (eventname) {
+      exec(null, null, "InAppBrowser", "hide", [this.id]);
+    },
+    setDataSaver: function (enabled) {
+        exec(null, null, "InAppBrowser", "setDataSaver", [!!enabled, this.id]);
     },
     addEventListener: function (eventname,f) {
         if (eventname in this.channels) {
@@ -58,9 +76,9 @@ InAppBrowser.prototype = {
 
     executeScript: function(injectDetails, cb) {
         if (injectDetails.code) {
-            exec(cb, null, "InAppBrowser", "injectScriptCode", [injectDetails.code, !!cb]);
+            exec(cb, null, "InAppBrowser", "injectScriptCode", [injectDetails.code, !!cb, this.id]);
         } else if (injectDetails.file) {
-            exec(cb, null, "InAppBrowser", "injectScriptFile", [injectDetails.file, !!cb]);
+            exec(cb, null, "InAppBrowser", "injectScriptFile", [injectDetails.file, !!cb, this.id]);
         } else {
             throw new Error('executeScript requires exactly one of code or file to be specified');
         }
@@ -68,15 +86,36 @@ InAppBrowser.prototype = {
 
     insertCSS: function(injectDetails, cb) {
         if (injectDetails.code) {
-            exec(cb, null, "InAppBrowser", "injectStyleCode", [injectDetails.code, !!cb]);
+            exec(cb, null, "InAppBrowser", "injectStyleCode", [injectDetails.code, !!cb, this.id]);
         } else if (injectDetails.file) {
-            exec(cb, null, "InAppBrowser", "injectStyleFile", [injectDetails.file, !!cb]);
+            exec(cb, null, "InAppBrowser", "injectStyleFile", [injectDetails.file, !!cb, this.id]);
         } else {
             throw new Error('insertCSS requires exactly one of code or file to be specified');
         }
+    },
+
+    addUserScript: function(injectDetails, cb) {
+        addUserContent(this, 'script', injectDetails, cb);
+    },
+
+    addUserStyle: function(injectDetails, cb) {
+        addUserContent(this, 'style', injectDetails, cb);
+    },
+
+    removeUserScript: function(id, cb) {
+        exec(cb, null, "InAppBrowser", "removeUserScript", [id, this.id]);
     }
 };
 
+function addUserContent(iab, type, injectDetails, cb) {
+    var source = injectDetails.code || injectDetails.file;
+    if (!source) {
+        throw new Error('addUser' + (type === 'style' ? 'Style' : 'Script') + ' requires exactly one of code or file to be specified');
+    }
+    exec(cb, null, "InAppBrowser", "addUserScript", [type, source, !injectDetails.code,
+        injectDetails.injectionTime || 'documentEnd', injectDetails.matches || [], iab.id]);
+}
+
 module.exports = function(strUrl, strWindowName, strWindowFeatures, callbacks) {
     // Don't catch calls that write to existing frames (e.g. named iframes).
     if (window.frames && window.frames[strWindowName]) {
@@ -98,7 +137,7 @@ module.exports = function(strUrl, strWindowName, strWindowFeatures, callbacks) {
 
     strWindowFeatures = strWindowFeatures || "";
 
-    exec(cb, cb, "InAppBrowser", "open", [strUrl, strWindowName, strWindowFeatures]);
+    exec(cb, cb, "InAppBrowser", "open", [strUrl, strWindowName, strWindowFeatures, iab.id]);
     return iab;
 };
 